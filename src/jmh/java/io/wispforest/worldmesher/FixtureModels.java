@@ -0,0 +1,182 @@
+package io.wispforest.worldmesher;
+
+import io.wispforest.worldmesher.renderers.WorldMesherFluidRenderer;
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.client.color.block.BlockColors;
+import net.minecraft.client.render.model.BakedModel;
+import net.minecraft.client.render.model.BakedQuad;
+import net.minecraft.client.render.model.json.ModelOverrideList;
+import net.minecraft.client.render.model.json.ModelTransformation;
+import net.minecraft.client.resource.metadata.AnimationResourceMetadata;
+import net.minecraft.client.texture.NativeImage;
+import net.minecraft.client.texture.Sprite;
+import net.minecraft.client.texture.SpriteContents;
+import net.minecraft.client.texture.SpriteDimensions;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.random.Random;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Headless stand-ins for the client's baked models and block atlas. The
+ * models are plain vanilla-shaped quads on a single sprite, which is all
+ * the tessellation path ever looks at
+ */
+final class FixtureModels {
+
+    private static boolean bootstrapped = false;
+
+    private FixtureModels() {}
+
+    /**
+     * Initialize the game registries without a client, a window or a GPU
+     */
+    static synchronized void bootstrap() {
+        if (bootstrapped) return;
+
+        SharedConstants.createGameVersion();
+        Bootstrap.initialize();
+
+        bootstrapped = true;
+    }
+
+    static TessellationResources resources() {
+        var sprite = createSprite("fixture");
+
+        var cube = new CubeModel(sprite);
+        var cross = new CrossModel(sprite);
+
+        return new TessellationResources(
+                state -> state.isOf(Blocks.GRASS) ? cross : cube,
+                BlockColors.create(),
+                () -> new WorldMesherFluidRenderer(sprite, sprite, sprite, sprite, sprite),
+                true,
+                false
+        );
+    }
+
+    private static Sprite createSprite(String name) {
+        var id = new Identifier("worldmesher", name);
+        var contents = new SpriteContents(id, new SpriteDimensions(16, 16), new NativeImage(16, 16, false), AnimationResourceMetadata.EMPTY);
+
+        return new Sprite(new Identifier("worldmesher", "fixture_atlas"), contents, 16, 16, 0, 0) {};
+    }
+
+    // positions of the four corners of each full cube face, wound like vanilla's
+    private static final Map<Direction, float[][]> FACE_CORNERS = new EnumMap<>(Map.of(
+            Direction.DOWN, new float[][]{{0, 0, 1}, {0, 0, 0}, {1, 0, 0}, {1, 0, 1}},
+            Direction.UP, new float[][]{{0, 1, 0}, {0, 1, 1}, {1, 1, 1}, {1, 1, 0}},
+            Direction.NORTH, new float[][]{{1, 1, 0}, {1, 0, 0}, {0, 0, 0}, {0, 1, 0}},
+            Direction.SOUTH, new float[][]{{0, 1, 1}, {0, 0, 1}, {1, 0, 1}, {1, 1, 1}},
+            Direction.WEST, new float[][]{{0, 1, 0}, {0, 0, 0}, {0, 0, 1}, {0, 1, 1}},
+            Direction.EAST, new float[][]{{1, 1, 1}, {1, 0, 1}, {1, 0, 0}, {1, 1, 0}}
+    ));
+
+    private static BakedQuad quad(float[][] corners, Direction face, Sprite sprite, int colorIndex) {
+        float[][] uvs = {{0, 0}, {0, 16}, {16, 16}, {16, 0}};
+        int[] vertexData = new int[32];
+
+        for (int vertex = 0; vertex < 4; vertex++) {
+            int offset = vertex * 8;
+            vertexData[offset] = Float.floatToRawIntBits(corners[vertex][0]);
+            vertexData[offset + 1] = Float.floatToRawIntBits(corners[vertex][1]);
+            vertexData[offset + 2] = Float.floatToRawIntBits(corners[vertex][2]);
+            vertexData[offset + 3] = -1;
+            vertexData[offset + 4] = Float.floatToRawIntBits(sprite.getFrameU(uvs[vertex][0]));
+            vertexData[offset + 5] = Float.floatToRawIntBits(sprite.getFrameV(uvs[vertex][1]));
+        }
+
+        return new BakedQuad(vertexData, colorIndex, face, sprite, true);
+    }
+
+    private abstract static class FixtureModel implements BakedModel {
+
+        protected final Sprite sprite;
+
+        protected FixtureModel(Sprite sprite) {
+            this.sprite = sprite;
+        }
+
+        @Override
+        public boolean useAmbientOcclusion() {
+            return true;
+        }
+
+        @Override
+        public boolean hasDepth() {
+            return false;
+        }
+
+        @Override
+        public boolean isSideLit() {
+            return true;
+        }
+
+        @Override
+        public boolean isBuiltin() {
+            return false;
+        }
+
+        @Override
+        public Sprite getParticleSprite() {
+            return this.sprite;
+        }
+
+        @Override
+        public ModelTransformation getTransformation() {
+            return ModelTransformation.NONE;
+        }
+
+        @Override
+        public ModelOverrideList getOverrides() {
+            return ModelOverrideList.EMPTY;
+        }
+    }
+
+    private static final class CubeModel extends FixtureModel {
+
+        private final Map<Direction, List<BakedQuad>> faces = new EnumMap<>(Direction.class);
+
+        private CubeModel(Sprite sprite) {
+            super(sprite);
+            FACE_CORNERS.forEach((direction, corners) -> this.faces.put(direction, List.of(quad(corners, direction, sprite, 0))));
+        }
+
+        @Override
+        public List<BakedQuad> getQuads(@Nullable BlockState state, @Nullable Direction face, Random random) {
+            return face == null ? List.of() : this.faces.get(face);
+        }
+    }
+
+    private static final class CrossModel extends FixtureModel {
+
+        private final List<BakedQuad> quads;
+
+        private CrossModel(Sprite sprite) {
+            super(sprite);
+            this.quads = List.of(
+                    quad(new float[][]{{.15f, 1, .15f}, {.15f, 0, .15f}, {.85f, 0, .85f}, {.85f, 1, .85f}}, Direction.NORTH, sprite, 0),
+                    quad(new float[][]{{.85f, 1, .85f}, {.85f, 0, .85f}, {.15f, 0, .15f}, {.15f, 1, .15f}}, Direction.SOUTH, sprite, 0),
+                    quad(new float[][]{{.15f, 1, .85f}, {.15f, 0, .85f}, {.85f, 0, .15f}, {.85f, 1, .15f}}, Direction.WEST, sprite, 0),
+                    quad(new float[][]{{.85f, 1, .15f}, {.85f, 0, .15f}, {.15f, 0, .85f}, {.15f, 1, .85f}}, Direction.EAST, sprite, 0)
+            );
+        }
+
+        @Override
+        public List<BakedQuad> getQuads(@Nullable BlockState state, @Nullable Direction face, Random random) {
+            return face == null ? this.quads : List.of();
+        }
+
+        @Override
+        public boolean useAmbientOcclusion() {
+            return false;
+        }
+    }
+}
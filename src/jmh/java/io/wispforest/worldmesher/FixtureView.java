@@ -0,0 +1,96 @@
+package io.wispforest.worldmesher;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.fluid.FluidState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.world.BlockRenderView;
+import net.minecraft.world.LightType;
+import net.minecraft.world.biome.ColorResolver;
+import net.minecraft.world.chunk.light.LightingProvider;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A cube of block states starting at the origin, fully lit by
+ * the sky and tinted with a single biome color everywhere
+ */
+final class FixtureView implements BlockRenderView {
+
+    private static final BlockState AIR = Blocks.AIR.getDefaultState();
+
+    private final int size;
+    private final BlockState[] states;
+
+    FixtureView(int size) {
+        this.size = size;
+        this.states = new BlockState[size * size * size];
+        Arrays.fill(this.states, AIR);
+    }
+
+    void set(int x, int y, int z, BlockState state) {
+        this.states[(z * this.size + y) * this.size + x] = state;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    @Override
+    public BlockState getBlockState(BlockPos pos) {
+        int x = pos.getX(), y = pos.getY(), z = pos.getZ();
+        if (x < 0 || y < 0 || z < 0 || x >= this.size || y >= this.size || z >= this.size) return AIR;
+
+        return this.states[(z * this.size + y) * this.size + x];
+    }
+
+    @Override
+    public FluidState getFluidState(BlockPos pos) {
+        return this.getBlockState(pos).getFluidState();
+    }
+
+    @Override
+    public @Nullable BlockEntity getBlockEntity(BlockPos pos) {
+        return null;
+    }
+
+    @Override
+    public int getLightLevel(LightType type, BlockPos pos) {
+        return type == LightType.SKY ? 15 : 0;
+    }
+
+    @Override
+    public float getBrightness(Direction direction, boolean shaded) {
+        if (!shaded) return 1f;
+
+        return switch (direction) {
+            case DOWN -> .5f;
+            case UP -> 1f;
+            case NORTH, SOUTH -> .8f;
+            case WEST, EAST -> .6f;
+        };
+    }
+
+    @Override
+    public LightingProvider getLightingProvider() {
+        throw new UnsupportedOperationException("Fixture views have no lighting provider");
+    }
+
+    @Override
+    public int getColor(BlockPos pos, ColorResolver colorResolver) {
+        return 0x91BD59;
+    }
+
+    @Override
+    public int getHeight() {
+        return 384;
+    }
+
+    @Override
+    public int getBottomY() {
+        return -64;
+    }
+}
@@ -0,0 +1,119 @@
+package io.wispforest.worldmesher;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMaps;
+import net.minecraft.util.math.BlockPos;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CPU side of building a mesh - snapshot capture and section
+ * tessellation - on synthetic fixtures, stopping short of any GL upload
+ * <p>
+ * Every invocation processes the entire fixture volume and is counted as
+ * {@link #BLOCKS} operations, so the reported throughput is in blocks per
+ * second and {@code -prof gc}'s {@code gc.alloc.rate.norm} is in bytes
+ * allocated per block. The {@link VertexCounter} reports vertices per second
+ * <p>
+ * Mixins are not applied outside of a Fabric launch, so tessellators are
+ * kept for the whole trial and never closed - their builders are released
+ * together with the forked JVM
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2G")
+public class MeshBuildBenchmark {
+
+    public static final int SIZE = 48;
+    public static final int BLOCKS = SIZE * SIZE * SIZE;
+
+    private static final BlockPos ORIGIN = BlockPos.ORIGIN;
+    private static final BlockPos END = new BlockPos(SIZE - 1, SIZE - 1, SIZE - 1);
+
+    @Param
+    public MeshFixture fixture;
+
+    private FixtureView view;
+    private List<MeshSection> sections;
+    private TessellationResources resources;
+    private final NativeBufferPool bufferPool = new NativeBufferPool(0);
+
+    private WorldSnapshot snapshot;
+    private SectionTessellator tessellator;
+    private final ConcurrentLinkedQueue<SectionTessellator> tessellators = new ConcurrentLinkedQueue<>();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        FixtureModels.bootstrap();
+
+        this.view = this.fixture.create(SIZE);
+        this.sections = MeshSection.collect(ORIGIN, END);
+        this.resources = FixtureModels.resources();
+
+        this.snapshot = WorldSnapshot.capture(this.view, this.sections);
+        this.tessellator = new SectionTessellator(this.resources, this.bufferPool, Object2IntMaps.emptyMap(), this.snapshot, ORIGIN, END, true, false, false, false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCKS)
+    public WorldSnapshot captureSnapshot() {
+        return WorldSnapshot.capture(this.view, this.sections);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCKS)
+    public void tessellate(VertexCounter counter) {
+        for (var section : this.sections) {
+            try (var geometry = this.tessellator.tessellate(section)) {
+                counter.count(geometry);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCKS)
+    public void tessellateParallel(VertexCounter counter) {
+        var tessellators = this.tessellators;
+
+        var futures = this.sections.stream().map(section -> CompletableFuture.supplyAsync(() -> {
+            var tessellator = tessellators.poll();
+            if (tessellator == null) {
+                tessellator = new SectionTessellator(this.resources, this.bufferPool, Object2IntMaps.emptyMap(), this.snapshot, ORIGIN, END, true, false, false, false);
+            }
+
+            try {
+                return tessellator.tessellate(section);
+            } finally {
+                tessellators.add(tessellator);
+            }
+        })).toList();
+
+        for (var future : futures) {
+            try (var geometry = future.join()) {
+                counter.count(geometry);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class VertexCounter {
+
+        public long vertices;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.vertices = 0;
+        }
+
+        void count(SectionGeometry geometry) {
+            geometry.layers().values().forEach(layerData -> this.vertices += layerData.vertexCount());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package io.wispforest.worldmesher;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.FluidBlock;
+
+import java.util.Random;
+
+/**
+ * The synthetic volumes mesh building is benchmarked on. Every
+ * fixture is generated from a fixed seed, so runs are comparable
+ */
+enum MeshFixture {
+
+    SOLID_CUBE {
+        @Override
+        void generate(FixtureView view, Random random) {
+            fill(view, (x, y, z) -> STONE);
+        }
+    },
+    HOLLOW_SHELL {
+        @Override
+        void generate(FixtureView view, Random random) {
+            int max = view.size() - 1;
+            fill(view, (x, y, z) -> x == 0 || y == 0 || z == 0 || x == max || y == max || z == max ? STONE : null);
+        }
+    },
+    RANDOM_TERRAIN {
+        @Override
+        void generate(FixtureView view, Random random) {
+            int size = view.size();
+            int seaLevel = size / 3;
+
+            double phaseX = random.nextDouble() * Math.PI * 2, phaseZ = random.nextDouble() * Math.PI * 2;
+            fill(view, (x, y, z) -> {
+                int height = (int) (size / 2d + Math.sin(x / 7d + phaseX) * size / 8d + Math.cos(z / 5d + phaseZ) * size / 8d);
+
+                if (y < height - 3) return STONE;
+                if (y < height) return DIRT;
+                if (y == height) return y < seaLevel ? DIRT : GRASS_BLOCK;
+                if (y <= seaLevel) return WATER;
+                if (y == height + 1 && random.nextInt(4) == 0) return GRASS;
+                return null;
+            });
+        }
+    },
+    FLUID_HEAVY {
+        @Override
+        void generate(FixtureView view, Random random) {
+            int floor = view.size() / 4;
+            fill(view, (x, y, z) -> {
+                if (y < floor) return STONE;
+                if (y < view.size() - 2) return WATER;
+                return random.nextInt(3) == 0 ? Blocks.WATER.getDefaultState().with(FluidBlock.LEVEL, 1 + random.nextInt(7)) : null;
+            });
+        }
+    },
+    TRANSLUCENT_HEAVY {
+        @Override
+        void generate(FixtureView view, Random random) {
+            fill(view, (x, y, z) -> switch (random.nextInt(4)) {
+                case 0 -> STAINED_GLASS;
+                case 1 -> ICE;
+                case 2 -> Blocks.SLIME_BLOCK.getDefaultState();
+                default -> null;
+            });
+        }
+    },
+    MIXED {
+        @Override
+        void generate(FixtureView view, Random random) {
+            fill(view, (x, y, z) -> switch (random.nextInt(8)) {
+                case 0, 1 -> STONE;
+                case 2 -> DIRT;
+                case 3 -> Blocks.GLASS.getDefaultState();
+                case 4 -> STAINED_GLASS;
+                case 5 -> GRASS;
+                case 6 -> WATER;
+                default -> null;
+            });
+        }
+    };
+
+    private static final BlockState STONE = Blocks.STONE.getDefaultState();
+    private static final BlockState DIRT = Blocks.DIRT.getDefaultState();
+    private static final BlockState GRASS_BLOCK = Blocks.GRASS_BLOCK.getDefaultState();
+    private static final BlockState GRASS = Blocks.GRASS.getDefaultState();
+    private static final BlockState WATER = Blocks.WATER.getDefaultState();
+    private static final BlockState STAINED_GLASS = Blocks.LIGHT_BLUE_STAINED_GLASS.getDefaultState();
+    private static final BlockState ICE = Blocks.ICE.getDefaultState();
+
+    abstract void generate(FixtureView view, Random random);
+
+    FixtureView create(int size) {
+        var view = new FixtureView(size);
+        this.generate(view, new Random(0xC0FFEE));
+        return view;
+    }
+
+    private static void fill(FixtureView view, BlockFunction function) {
+        for (int z = 0; z < view.size(); z++) {
+            for (int y = 0; y < view.size(); y++) {
+                for (int x = 0; x < view.size(); x++) {
+                    var state = function.stateAt(x, y, z);
+                    if (state != null) view.set(x, y, z, state);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface BlockFunction {
+        BlockState stateAt(int x, int y, int z);
+    }
+}
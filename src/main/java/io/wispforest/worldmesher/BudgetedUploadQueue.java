@@ -0,0 +1,126 @@
+package io.wispforest.worldmesher;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+
+/**
+ * An upload queue which spreads its uploads across frames. Each drain performs uploads
+ * until either the byte or the time budget is used up, though always at least one
+ * so that even uploads larger than the budget eventually go through
+ * <p>
+ * The {@link #shared()} queue is drained at the start of every frame, queues created
+ * by the caller have to be drained by them
+ */
+public final class BudgetedUploadQueue implements UploadQueue {
+
+    private static final BudgetedUploadQueue SHARED = new BudgetedUploadQueue(16L * 1024 * 1024, 2_000_000L);
+
+    private final long maxBytesPerDrain;
+    private final long maxNanosPerDrain;
+    private final LongSupplier clock;
+
+    private final ArrayDeque<Batch> batches = new ArrayDeque<>();
+    private int pendingUploads = 0;
+
+    /**
+     * @param maxBytesPerDrain How many bytes a single drain may upload
+     * @param maxNanosPerDrain How long a single drain may take, in nanoseconds
+     * @param clock            The time source the drain time is measured with
+     */
+    public BudgetedUploadQueue(long maxBytesPerDrain, long maxNanosPerDrain, LongSupplier clock) {
+        this.maxBytesPerDrain = maxBytesPerDrain;
+        this.maxNanosPerDrain = maxNanosPerDrain;
+        this.clock = clock;
+    }
+
+    public BudgetedUploadQueue(long maxBytesPerDrain, long maxNanosPerDrain) {
+        this(maxBytesPerDrain, maxNanosPerDrain, System::nanoTime);
+    }
+
+    /**
+     * @return The queue used by all meshes which were not given their own,
+     * uploading up to 16 MiB or for up to 2 milliseconds per frame
+     */
+    public static BudgetedUploadQueue shared() {
+        return SHARED;
+    }
+
+    @Override
+    public CompletableFuture<Void> submit(List<? extends Upload> uploads) {
+        if (uploads.isEmpty()) return CompletableFuture.completedFuture(null);
+
+        var batch = new Batch(new ArrayDeque<>(uploads));
+        synchronized (this) {
+            this.batches.addLast(batch);
+            this.pendingUploads += uploads.size();
+        }
+
+        return batch.future;
+    }
+
+    @Override
+    public void drain() {
+        long start = this.clock.getAsLong();
+        long uploadedBytes = 0;
+        int uploads = 0;
+
+        while (true) {
+            Batch batch;
+            Upload upload;
+
+            synchronized (this) {
+                batch = this.batches.peekFirst();
+                if (batch == null) return;
+
+                upload = batch.uploads.peekFirst();
+                if (uploads > 0 && (uploadedBytes + upload.byteSize() > this.maxBytesPerDrain || this.clock.getAsLong() - start >= this.maxNanosPerDrain)) {
+                    return;
+                }
+
+                batch.uploads.pollFirst();
+                this.pendingUploads--;
+                if (batch.uploads.isEmpty()) this.batches.pollFirst();
+            }
+
+            try {
+                upload.upload();
+
+                uploadedBytes += upload.byteSize();
+                uploads++;
+            } catch (Throwable throwable) {
+                synchronized (this) {
+                    if (this.batches.remove(batch)) this.pendingUploads -= batch.uploads.size();
+                }
+
+                batch.uploads.forEach(Upload::discard);
+                batch.future.completeExceptionally(throwable);
+                continue;
+            } finally {
+                upload.finish();
+            }
+
+            if (batch.uploads.isEmpty()) batch.future.complete(null);
+        }
+    }
+
+    @Override
+    public synchronized int pendingUploads() {
+        return this.pendingUploads;
+    }
+
+    public long maxBytesPerDrain() {
+        return this.maxBytesPerDrain;
+    }
+
+    public long maxNanosPerDrain() {
+        return this.maxNanosPerDrain;
+    }
+
+    private record Batch(ArrayDeque<Upload> uploads, CompletableFuture<Void> future) {
+        Batch(ArrayDeque<Upload> uploads) {
+            this(uploads, new CompletableFuture<>());
+        }
+    }
+}
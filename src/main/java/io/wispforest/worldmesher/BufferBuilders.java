@@ -0,0 +1,79 @@
+package io.wispforest.worldmesher;
+
+import io.wispforest.worldmesher.mixin.BufferBuilderAccessor;
+import io.wispforest.worldmesher.mixin.GlAllocationUtilsAccessor;
+import net.minecraft.client.render.BufferBuilder;
+import net.minecraft.client.render.VertexFormat;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+final class BufferBuilders {
+
+    private BufferBuilders() {}
+
+    /**
+     * Append already encoded vertices to the given builder, exactly as
+     * if they had been emitted into it one by one. The builder must
+     * currently be building with the format the vertices are encoded in
+     */
+    static void append(BufferBuilder builder, ByteBuffer vertices, int vertexCount) {
+        var accessor = (BufferBuilderAccessor) builder;
+        int bytes = vertices.remaining();
+
+        accessor.worldmesher$grow(bytes);
+
+        int elementOffset = accessor.worldmesher$getElementOffset();
+        MemoryUtil.memCopy(MemoryUtil.memAddress(vertices), MemoryUtil.memAddress(accessor.worldmesher$getBuffer(), elementOffset), bytes);
+
+        accessor.worldmesher$setElementOffset(elementOffset + bytes);
+        accessor.worldmesher$setVertexCount(accessor.worldmesher$getVertexCount() + vertexCount);
+    }
+
+    /**
+     * Create a builder which is building directly on top of the given, already encoded vertices
+     * instead of its own native buffer, so that ending it yields a built buffer pointing at them.
+     * The builder must be passed to {@link #unwrap(BufferBuilder)} once that buffer is uploaded
+     */
+    static BufferBuilder wrap(ByteBuffer vertices, int vertexCount, VertexFormat.DrawMode drawMode, VertexFormat format) {
+        var builder = new BufferBuilder(1);
+        free(builder);
+
+        var accessor = (BufferBuilderAccessor) builder;
+        accessor.worldmesher$setBuffer(vertices.slice());
+
+        builder.begin(drawMode, format);
+        accessor.worldmesher$setElementOffset(vertices.remaining());
+        accessor.worldmesher$setVertexCount(vertexCount);
+
+        return builder;
+    }
+
+    /**
+     * Detach the vertices passed to {@link #wrap(ByteBuffer, int, VertexFormat.DrawMode, VertexFormat)}
+     * from the given builder, so that they are never mistaken for memory it has to free
+     */
+    static void unwrap(BufferBuilder builder) {
+        ((BufferBuilderAccessor) builder).worldmesher$setBuffer(null);
+    }
+
+    /**
+     * @return The size of the native buffer currently backing the given builder, in bytes
+     */
+    static int capacity(BufferBuilder builder) {
+        return ((BufferBuilderAccessor) builder).worldmesher$getBuffer().capacity();
+    }
+
+    /**
+     * Immediately release the native memory backing the given builder,
+     * instead of waiting for it to be garbage-collected
+     */
+    static void free(BufferBuilder builder) {
+        GlAllocationUtilsAccessor.worldmesher$getAllocator().free(
+                MemoryUtil.memAddress(((BufferBuilderAccessor) builder).worldmesher$getBuffer(), 0)
+        );
+
+        // primarily here to inform ModernFix about what we did
+        ((BufferBuilderAccessor) builder).worldmesher$setBuffer(null);
+    }
+}
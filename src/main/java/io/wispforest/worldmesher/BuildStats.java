@@ -0,0 +1,231 @@
+package io.wispforest.worldmesher;
+
+import com.google.common.collect.ImmutableMap;
+import net.minecraft.client.render.RenderLayer;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Statistics about a single completed build of a {@link WorldMesh}
+ *
+ * @param partial              Whether only the dirty sections of the mesh were rebuilt
+ * @param fromCache            Whether the mesh was loaded from its {@link MeshCache} instead of being tessellated
+ * @param sectionsBuilt        How many sections were tessellated
+ * @param sectionsUnchanged    How many sections were skipped because their contents did not change
+ * @param phaseNanos           The wall time spent in each phase of the build, in nanoseconds
+ * @param totalNanos           The wall time of the entire build, in nanoseconds
+ * @param blocksVisited        How many blocks the tessellators looked at - blocks
+ *                             in skipped sections are not counted
+ * @param nonAirBlocks         How many of the visited blocks were not air
+ * @param layers               The quad and vertex counts of every layer of the mesh after this build
+ * @param nativeBytesAllocated How many bytes of native memory this build held for vertex data,
+ *                             including builders taken from the buffer pool
+ * @param lightCacheHits       How many light and ambient occlusion lookups were
+ *                             answered by the {@link LightCache} of their section
+ * @param lightCacheMisses     How many light and ambient occlusion lookups had to be computed
+ */
+public record BuildStats(boolean partial, boolean fromCache, int sectionsBuilt, int sectionsUnchanged, Map<Phase, Long> phaseNanos, long totalNanos, int blocksVisited, int nonAirBlocks, Map<RenderLayer, LayerStats> layers, long nativeBytesAllocated, long lightCacheHits, long lightCacheMisses) {
+
+    /**
+     * @return Whether nothing in the mesh changed, so that this
+     * build neither tessellated nor uploaded anything
+     */
+    public boolean skipped() {
+        return this.sectionsBuilt == 0 && !this.fromCache;
+    }
+
+    /**
+     * @return The wall time spent in the given phase, in milliseconds
+     */
+    public double phaseMillis(Phase phase) {
+        return this.phaseNanos.getOrDefault(phase, 0L) / 1e6;
+    }
+
+    /**
+     * @return The wall time of the entire build, in milliseconds
+     */
+    public double totalMillis() {
+        return this.totalNanos / 1e6;
+    }
+
+    /**
+     * @return The total amount of vertices in the mesh, across all layers
+     */
+    public int vertexCount() {
+        return this.layers.values().stream().mapToInt(LayerStats::vertices).sum();
+    }
+
+    /**
+     * @return The total amount of quads in the mesh, across all layers
+     */
+    public int quadCount() {
+        return this.layers.values().stream().mapToInt(LayerStats::quads).sum();
+    }
+
+    /**
+     * @return The fraction of light and ambient occlusion lookups
+     * answered by a {@link LightCache}, or {@code 0} if there were none
+     */
+    public double lightCacheHitRate() {
+        long lookups = this.lightCacheHits + this.lightCacheMisses;
+        return lookups == 0 ? 0 : this.lightCacheHits / (double) lookups;
+    }
+
+    public record LayerStats(int quads, int vertices) {}
+
+    public enum Phase {
+        /**
+         * Capturing (and possibly freezing) entities, on the client thread across
+         * however many ticks that takes - only the time spent working on them is counted
+         */
+        ENTITY_CAPTURE,
+        /**
+         * Copying the world into a {@link WorldSnapshot}
+         */
+        SNAPSHOT,
+        /**
+         * Hashing the contents of every section to build
+         */
+        CONTENT_HASH,
+        /**
+         * Loading the mesh from or storing it into its {@link MeshCache}
+         */
+        CACHE,
+        /**
+         * Iterating and tessellating the blocks of all sections to build
+         */
+        TESSELLATION,
+        /**
+         * Merging section geometry into per-layer buffers
+         */
+        MERGE,
+        /**
+         * Sorting the quads of the translucent layer
+         */
+        TRANSLUCENT_SORT,
+        /**
+         * Waiting for the upload queue to upload all changed layers, which may take several frames
+         */
+        UPLOAD_WAIT,
+        /**
+         * Assembling the {@link DynamicRenderInfo}
+         */
+        RENDER_INFO
+    }
+
+    /**
+     * Collects the statistics of a running build. Every timed phase
+     * is also emitted as a {@link MeshBuildPhaseEvent} to JFR
+     */
+    static final class Recorder {
+
+        private final int meshId;
+        private final boolean partial;
+        private final long startNanos = System.nanoTime();
+
+        private final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+        private final Map<RenderLayer, LayerStats> layers = new HashMap<>();
+
+        private boolean fromCache = false;
+        private int sectionsBuilt = 0;
+        private int sectionsUnchanged = 0;
+        final AtomicInteger blocksVisited = new AtomicInteger();
+        final AtomicInteger nonAirBlocks = new AtomicInteger();
+        final AtomicLong nativeBytesAllocated = new AtomicLong();
+        final AtomicLong lightCacheHits = new AtomicLong();
+        final AtomicLong lightCacheMisses = new AtomicLong();
+
+        Recorder(Object mesh, boolean partial) {
+            this.meshId = System.identityHashCode(mesh);
+            this.partial = partial;
+        }
+
+        <T> T time(Phase phase, Supplier<T> action) {
+            var event = new MeshBuildPhaseEvent();
+            event.begin();
+
+            long start = System.nanoTime();
+            try {
+                return action.get();
+            } finally {
+                long duration = System.nanoTime() - start;
+                synchronized (this.phaseNanos) {
+                    this.phaseNanos.merge(phase, duration, Long::sum);
+                }
+
+                event.end();
+                if (event.shouldCommit()) {
+                    event.mesh = this.meshId;
+                    event.phase = phase.name();
+                    event.partial = this.partial;
+                    event.commit();
+                }
+            }
+        }
+
+        /**
+         * Record time spent in a phase which did not run on
+         * the build thread, without emitting an event
+         */
+        void record(Phase phase, long nanos) {
+            synchronized (this.phaseNanos) {
+                this.phaseNanos.merge(phase, nanos, Long::sum);
+            }
+        }
+
+        void time(Phase phase, Runnable action) {
+            this.time(phase, () -> {
+                action.run();
+                return null;
+            });
+        }
+
+        void section(SectionGeometry geometry) {
+            this.blocksVisited.addAndGet(geometry.blocksVisited);
+            this.nonAirBlocks.addAndGet(geometry.nonAirBlocks);
+            this.nativeBytesAllocated.addAndGet(geometry.byteSize());
+            this.lightCacheHits.addAndGet(geometry.lightCacheHits);
+            this.lightCacheMisses.addAndGet(geometry.lightCacheMisses);
+        }
+
+        void fromCache() {
+            this.fromCache = true;
+        }
+
+        void sectionsBuilt(int sectionsBuilt) {
+            this.sectionsBuilt = sectionsBuilt;
+        }
+
+        void sectionsUnchanged(int sectionsUnchanged) {
+            this.sectionsUnchanged = sectionsUnchanged;
+        }
+
+        void layer(RenderLayer layer, int vertices) {
+            this.layers.merge(layer, new LayerStats(vertices / 4, vertices), (first, second) -> new LayerStats(first.quads + second.quads, first.vertices + second.vertices));
+        }
+
+        BuildStats finish() {
+            synchronized (this.phaseNanos) {
+                return new BuildStats(
+                        this.partial,
+                        this.fromCache,
+                        this.sectionsBuilt,
+                        this.sectionsUnchanged,
+                        ImmutableMap.copyOf(this.phaseNanos),
+                        System.nanoTime() - this.startNanos,
+                        this.blocksVisited.get(),
+                        this.nonAirBlocks.get(),
+                        ImmutableMap.copyOf(this.layers),
+                        this.nativeBytesAllocated.get(),
+                        this.lightCacheHits.get(),
+                        this.lightCacheMisses.get()
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package io.wispforest.worldmesher;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Checked by a running build at the start of every phase and section,
+ * so that it stops as soon as possible once the build is cancelled
+ */
+final class CancellationToken {
+
+    private volatile boolean cancelled = false;
+
+    void cancel() {
+        this.cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * @throws CancellationException If this token was cancelled
+     */
+    void throwIfCancelled() {
+        if (this.cancelled) throw new CancellationException("World mesh build was cancelled");
+    }
+}
@@ -0,0 +1,177 @@
+package io.wispforest.worldmesher;
+
+import net.minecraft.util.math.BlockPos;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts vertices between {@code POSITION_COLOR_TEXTURE_LIGHT_NORMAL} and the compact
+ * format of {@link io.wispforest.worldmesher.renderers.WorldMesherRenderLayers#COMPACT_FORMAT},
+ * which takes 20 instead of 32 bytes per vertex:
+ * <ul>
+ *     <li>the position as three shorts in 1/1024ths of a block relative to the vertex's section,
+ *     plus a fourth one holding the index of that section - five bits per axis, counted
+ *     from the section containing the origin of the mesh</li>
+ *     <li>the color, unchanged</li>
+ *     <li>the texture coordinates as unsigned shorts normalized to the atlas</li>
+ *     <li>block and sky light as one unsigned byte each</li>
+ *     <li>the normal as two octahedrally encoded bytes</li>
+ * </ul>
+ * Decoding restores every component within the bounds given by the {@code MAX_*_ERROR}
+ * constants. Neither direction touches any game state, so both can be checked headlessly
+ */
+final class CompactVertices {
+
+    static final int STANDARD_VERTEX_SIZE = 32;
+    static final int COMPACT_VERTEX_SIZE = 20;
+
+    /**
+     * How many sections a mesh may span along each axis for its
+     * section indices to fit into the fourth position component
+     */
+    static final int MAX_SECTIONS_PER_AXIS = 32;
+
+    static final int POSITION_SCALE = 1024;
+    static final int UV_SCALE = 65535;
+
+    // a full quantization step each - twice the worst rounding
+    // error, which leaves headroom for float rounding
+    static final float MAX_POSITION_ERROR = 1f / POSITION_SCALE;
+    static final float MAX_UV_ERROR = 1f / UV_SCALE;
+    // per component, in units of the normalized normal
+    static final float MAX_NORMAL_ERROR = 3f / 127;
+
+    private CompactVertices() {}
+
+    /**
+     * @return Whether a mesh spanning the given volume can be encoded at all
+     */
+    static boolean fits(BlockPos origin, BlockPos end) {
+        return (end.getX() >> 4) - (origin.getX() >> 4) < MAX_SECTIONS_PER_AXIS
+                && (end.getY() >> 4) - (origin.getY() >> 4) < MAX_SECTIONS_PER_AXIS
+                && (end.getZ() >> 4) - (origin.getZ() >> 4) < MAX_SECTIONS_PER_AXIS;
+    }
+
+    /**
+     * Encode the given mesh-relative vertices of a section into a newly allocated buffer,
+     * which must be freed through {@link MemoryUtil#memFree(java.nio.Buffer)}
+     */
+    static ByteBuffer encode(ByteBuffer source, int vertexCount, BlockPos origin, MeshSection section) {
+        var target = MemoryUtil.memAlloc(vertexCount * COMPACT_VERTEX_SIZE);
+        encode(
+                source, target, vertexCount,
+                origin.getX() & 15, origin.getY() & 15, origin.getZ() & 15,
+                (section.min().getX() >> 4) - (origin.getX() >> 4),
+                (section.min().getY() >> 4) - (origin.getY() >> 4),
+                (section.min().getZ() >> 4) - (origin.getZ() >> 4)
+        );
+
+        return target;
+    }
+
+    /**
+     * Encode the given vertices, whose positions are relative to the origin of their mesh
+     *
+     * @param originX  The position of the mesh origin inside its section, along each axis
+     * @param sectionX The index of the section of the vertices along each axis,
+     *                 counted from the section containing the mesh origin
+     */
+    static void encode(ByteBuffer source, ByteBuffer target, int vertexCount, int originX, int originY, int originZ, int sectionX, int sectionY, int sectionZ) {
+        int sourceBase = source.position(), targetBase = target.position();
+
+        short packedSection = (short) (sectionX | sectionY << 5 | sectionZ << 10);
+        float offsetX = originX - sectionX * 16, offsetY = originY - sectionY * 16, offsetZ = originZ - sectionZ * 16;
+
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            int from = sourceBase + vertex * STANDARD_VERTEX_SIZE;
+            int to = targetBase + vertex * COMPACT_VERTEX_SIZE;
+
+            target.putShort(to, quantizePosition(source.getFloat(from) + offsetX));
+            target.putShort(to + 2, quantizePosition(source.getFloat(from + 4) + offsetY));
+            target.putShort(to + 4, quantizePosition(source.getFloat(from + 8) + offsetZ));
+            target.putShort(to + 6, packedSection);
+
+            target.putInt(to + 8, source.getInt(from + 12));
+
+            target.putShort(to + 12, (short) Math.round(clamp(source.getFloat(from + 16), 0, 1) * UV_SCALE));
+            target.putShort(to + 14, (short) Math.round(clamp(source.getFloat(from + 20), 0, 1) * UV_SCALE));
+
+            target.put(to + 16, (byte) Math.min(Short.toUnsignedInt(source.getShort(from + 24)), 255));
+            target.put(to + 17, (byte) Math.min(Short.toUnsignedInt(source.getShort(from + 26)), 255));
+
+            float normalX = source.get(from + 28) / 127f, normalY = source.get(from + 29) / 127f, normalZ = source.get(from + 30) / 127f;
+            float length = Math.abs(normalX) + Math.abs(normalY) + Math.abs(normalZ);
+
+            float octX = 0, octY = 0;
+            if (length > 0) {
+                octX = normalX / length;
+                octY = normalY / length;
+
+                // fold the lower hemisphere over the diagonals
+                if (normalZ < 0) {
+                    float foldedX = (1 - Math.abs(octY)) * signum(octX);
+                    octY = (1 - Math.abs(octX)) * signum(octY);
+                    octX = foldedX;
+                }
+            }
+
+            target.put(to + 18, (byte) Math.round(octX * 127));
+            target.put(to + 19, (byte) Math.round(octY * 127));
+        }
+    }
+
+    /**
+     * Decode the given compact vertices back into the standard format, with
+     * positions relative to the mesh origin again - this is what the compact shader does
+     *
+     * @param originX The position of the mesh origin inside its section, along each axis
+     */
+    static void decode(ByteBuffer source, ByteBuffer target, int vertexCount, int originX, int originY, int originZ) {
+        int sourceBase = source.position(), targetBase = target.position();
+
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            int from = sourceBase + vertex * COMPACT_VERTEX_SIZE;
+            int to = targetBase + vertex * STANDARD_VERTEX_SIZE;
+
+            int packedSection = source.getShort(from + 6);
+            target.putFloat(to, source.getShort(from) / (float) POSITION_SCALE + (packedSection & 31) * 16 - originX);
+            target.putFloat(to + 4, source.getShort(from + 2) / (float) POSITION_SCALE + (packedSection >> 5 & 31) * 16 - originY);
+            target.putFloat(to + 8, source.getShort(from + 4) / (float) POSITION_SCALE + (packedSection >> 10 & 31) * 16 - originZ);
+
+            target.putInt(to + 12, source.getInt(from + 8));
+
+            target.putFloat(to + 16, Short.toUnsignedInt(source.getShort(from + 12)) / (float) UV_SCALE);
+            target.putFloat(to + 20, Short.toUnsignedInt(source.getShort(from + 14)) / (float) UV_SCALE);
+
+            target.putShort(to + 24, (short) Byte.toUnsignedInt(source.get(from + 16)));
+            target.putShort(to + 26, (short) Byte.toUnsignedInt(source.get(from + 17)));
+
+            float octX = source.get(from + 18) / 127f, octY = source.get(from + 19) / 127f;
+            float normalX = octX, normalY = octY, normalZ = 1 - Math.abs(octX) - Math.abs(octY);
+            if (normalZ < 0) {
+                normalX = (1 - Math.abs(octY)) * signum(octX);
+                normalY = (1 - Math.abs(octX)) * signum(octY);
+            }
+
+            float length = (float) Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+            target.put(to + 28, (byte) Math.round(normalX / length * 127));
+            target.put(to + 29, (byte) Math.round(normalY / length * 127));
+            target.put(to + 30, (byte) Math.round(normalZ / length * 127));
+            target.put(to + 31, (byte) 0);
+        }
+    }
+
+    private static short quantizePosition(float position) {
+        return (short) clamp(Math.round(position * POSITION_SCALE), Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    // unlike Math.signum, zero counts as positive
+    private static float signum(float value) {
+        return value >= 0 ? 1 : -1;
+    }
+}
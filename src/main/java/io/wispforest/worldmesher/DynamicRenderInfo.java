@@ -3,23 +3,55 @@ package io.wispforest.worldmesher;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Multimap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.client.render.Frustum;
 import net.minecraft.entity.Entity;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.util.math.Vec3d;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+/**
+ * The block entities and entities of a mesh, which are rendered separately from its
+ * vertex buffers. Besides the plain maps, both are indexed by the 16³ section they lie in
+ * so that renderers can query them by box or cull them against a frustum
+ * without iterating all of them
+ */
 public class DynamicRenderInfo {
 
     public static DynamicRenderInfo EMPTY = new DynamicRenderInfo(ImmutableMap.of(), ImmutableMultimap.of());
 
+    protected BlockPos origin;
     protected Map<BlockPos, BlockEntity> blockEntities;
     protected Multimap<Vec3d, EntityEntry> entities;
 
-    public DynamicRenderInfo(Map<BlockPos, BlockEntity> blockEntities, Multimap<Vec3d, EntityEntry> entities) {
+    private final List<IndexedSection<Map.Entry<BlockPos, BlockEntity>>> blockEntitySections;
+    private final List<IndexedSection<EntityEntry>> entitySections;
+
+    /**
+     * @param origin        The origin of the mesh, which the keys of both maps are relative to
+     * @param blockEntities The block entities of the mesh, by position relative to its origin
+     * @param entities      The entities of the mesh, by position relative to its origin
+     */
+    public DynamicRenderInfo(BlockPos origin, Map<BlockPos, BlockEntity> blockEntities, Multimap<Vec3d, EntityEntry> entities) {
+        this.origin = origin.toImmutable();
         this.blockEntities = ImmutableMap.copyOf(blockEntities);
         this.entities = ImmutableMultimap.copyOf(entities);
+
+        this.blockEntitySections = index(this.blockEntities.entrySet(), entry -> new Box(entry.getKey().add(this.origin)));
+        this.entitySections = index(this.entities.values(), entry -> entry.entity().getVisibilityBoundingBox());
+    }
+
+    public DynamicRenderInfo(Map<BlockPos, BlockEntity> blockEntities, Multimap<Vec3d, EntityEntry> entities) {
+        this(BlockPos.ORIGIN, blockEntities, entities);
     }
 
     public Map<BlockPos, BlockEntity> blockEntities() {
@@ -30,10 +62,98 @@ public class DynamicRenderInfo {
         return this.entities;
     }
 
+    /**
+     * Run the given action for every block entity whose block intersects the given box
+     *
+     * @param box The box to query, relative to the origin of the mesh like the keys of {@link #blockEntities()}
+     */
+    public void forEachBlockEntity(Box box, BiConsumer<BlockPos, BlockEntity> action) {
+        forEachIntersecting(this.blockEntitySections, box.offset(this.origin), entry -> action.accept(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * Run the given action for every entity whose visibility bounds
+     * intersect the given box, as of when it was captured
+     *
+     * @param box The box to query, relative to the origin of the mesh like the keys of {@link #entities()}
+     */
+    public void forEachEntity(Box box, Consumer<EntityEntry> action) {
+        forEachIntersecting(this.entitySections, box.offset(this.origin), action);
+    }
+
+    /**
+     * Run the given action for every block entity whose block is visible in the given frustum,
+     * which tests world coordinates just like the one passed to {@link WorldMesh#render(net.minecraft.client.util.math.MatrixStack, int, Frustum)}
+     */
+    public void forEachVisibleBlockEntity(Frustum frustum, BiConsumer<BlockPos, BlockEntity> action) {
+        forEachVisible(this.blockEntitySections, frustum, entry -> action.accept(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * Run the given action for every entity whose visibility bounds are visible in the given frustum,
+     * which tests world coordinates just like the one passed to {@link WorldMesh#render(net.minecraft.client.util.math.MatrixStack, int, Frustum)}
+     */
+    public void forEachVisibleEntity(Frustum frustum, Consumer<EntityEntry> action) {
+        forEachVisible(this.entitySections, frustum, action);
+    }
+
     public boolean isEmpty() {
         return this.blockEntities.isEmpty() && this.entities.isEmpty();
     }
 
+    private static <T> List<IndexedSection<T>> index(Iterable<T> entries, Function<T, Box> boundsFunction) {
+        var sections = new Long2ObjectLinkedOpenHashMap<IndexedSection<T>>();
+        for (var entry : entries) {
+            var bounds = boundsFunction.apply(entry);
+            var center = BlockPos.ofFloored(bounds.getCenter());
+
+            long sectionPos = ChunkSectionPos.asLong(
+                    ChunkSectionPos.getSectionCoord(center.getX()),
+                    ChunkSectionPos.getSectionCoord(center.getY()),
+                    ChunkSectionPos.getSectionCoord(center.getZ())
+            );
+
+            var section = sections.get(sectionPos);
+            if (section == null) {
+                section = new IndexedSection<>(bounds, new ArrayList<>(), new ArrayList<>());
+            } else {
+                section = new IndexedSection<>(section.bounds.union(bounds), section.entries, section.entryBounds);
+            }
+
+            section.entries.add(entry);
+            section.entryBounds.add(bounds);
+            sections.put(sectionPos, section);
+        }
+
+        return List.copyOf(sections.values());
+    }
+
+    private static <T> void forEachIntersecting(List<IndexedSection<T>> sections, Box box, Consumer<T> action) {
+        for (var section : sections) {
+            if (!section.bounds.intersects(box)) continue;
+
+            for (int i = 0; i < section.entries.size(); i++) {
+                if (section.entryBounds.get(i).intersects(box)) action.accept(section.entries.get(i));
+            }
+        }
+    }
+
+    private static <T> void forEachVisible(List<IndexedSection<T>> sections, Frustum frustum, Consumer<T> action) {
+        for (var section : sections) {
+            if (!frustum.isVisible(section.bounds)) continue;
+
+            for (int i = 0; i < section.entries.size(); i++) {
+                if (frustum.isVisible(section.entryBounds.get(i))) action.accept(section.entries.get(i));
+            }
+        }
+    }
+
+    /**
+     * Everything in a single section, with the world-space bounds of each entry
+     * and the union of those bounds - which may reach past the section
+     */
+    private record IndexedSection<T>(Box bounds, List<T> entries, List<Box> entryBounds) {}
+
     public record EntityEntry(Entity entity, int light) {}
 
 }
@@ -0,0 +1,113 @@
+package io.wispforest.worldmesher;
+
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.entity.Entity;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Captures the entities of a mesh on the client thread, spread across client ticks. Every
+ * tick works through the pending captures in the order they were requested in until
+ * {@link #NANOS_PER_TICK} are used up, though always processes at least one entity -
+ * freezing every entity of a large volume at once would otherwise stall a single frame
+ */
+final class EntityCapture {
+
+    static final long NANOS_PER_TICK = 2_000_000L;
+
+    // only ever touched on the client thread
+    private static final ArrayDeque<EntityCapture> PENDING = new ArrayDeque<>();
+
+    private final Supplier<List<Entity>> query;
+    private final boolean freeze;
+    private final CancellationToken token;
+    private final LongConsumer timeSink;
+
+    private final CompletableFuture<List<DynamicRenderInfo.EntityEntry>> future = new CompletableFuture<>();
+    private final List<DynamicRenderInfo.EntityEntry> captured = new ArrayList<>();
+    private @Nullable List<Entity> entities = null;
+    private int nextEntity = 0;
+
+    private EntityCapture(Supplier<List<Entity>> query, boolean freeze, CancellationToken token, LongConsumer timeSink) {
+        this.query = query;
+        this.freeze = freeze;
+        this.token = token;
+        this.timeSink = timeSink;
+    }
+
+    /**
+     * Queue a capture of the entities returned by the given query, which runs on the client
+     * thread during the first tick the capture is worked on
+     *
+     * @param freeze   Whether to capture a ticked copy of every entity instead of the entity itself
+     * @param timeSink Called with the time spent on this capture during every tick, in nanoseconds
+     * @return A future completing with the captured entities once all of them are processed,
+     * or with a {@link java.util.concurrent.CancellationException} if the given token is cancelled first
+     */
+    static CompletableFuture<List<DynamicRenderInfo.EntityEntry>> capture(Supplier<List<Entity>> query, boolean freeze, CancellationToken token, LongConsumer timeSink) {
+        var capture = new EntityCapture(query, freeze, token, timeSink);
+        MinecraftClient.getInstance().execute(() -> PENDING.addLast(capture));
+
+        return capture.future;
+    }
+
+    /**
+     * Work on the pending captures for this tick, must be called on the client thread
+     */
+    static void tick() {
+        long deadline = System.nanoTime() + NANOS_PER_TICK;
+
+        while (!PENDING.isEmpty() && System.nanoTime() < deadline) {
+            if (!PENDING.peekFirst().run(deadline)) return;
+            PENDING.pollFirst();
+        }
+    }
+
+    /**
+     * @return Whether this capture is done
+     */
+    private boolean run(long deadline) {
+        long start = System.nanoTime();
+        try {
+            this.token.throwIfCancelled();
+
+            if (this.entities == null) this.entities = this.query.get();
+            while (this.nextEntity < this.entities.size()) {
+                this.captured.add(this.capture(this.entities.get(this.nextEntity++)));
+                if (this.nextEntity < this.entities.size() && System.nanoTime() >= deadline) return false;
+            }
+
+            this.future.complete(List.copyOf(this.captured));
+        } catch (Throwable throwable) {
+            this.future.completeExceptionally(throwable);
+        } finally {
+            this.timeSink.accept(System.nanoTime() - start);
+        }
+
+        return true;
+    }
+
+    private DynamicRenderInfo.EntityEntry capture(Entity entity) {
+        var client = MinecraftClient.getInstance();
+
+        if (this.freeze) {
+            var originalEntity = entity;
+            entity = entity.getType().create(client.world);
+
+            entity.copyFrom(originalEntity);
+            entity.copyPositionAndRotation(originalEntity);
+            entity.tick();
+        }
+
+        return new DynamicRenderInfo.EntityEntry(
+                entity,
+                client.getEntityRenderDispatcher().getLight(entity, 0)
+        );
+    }
+}
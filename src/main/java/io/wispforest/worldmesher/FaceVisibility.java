@@ -0,0 +1,211 @@
+package io.wispforest.worldmesher;
+
+import io.wispforest.worldmesher.renderers.WorldMesherBlockModelRenderer;
+import it.unimi.dsi.fastutil.objects.Reference2ByteOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockRenderType;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.random.Random;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Decides which faces of every block in a section are visible before any of them
+ * is tessellated. A pre-pass reads the states of the section and the layer of blocks
+ * around it once, marking which of them are opaque full cubes - faces between two of
+ * those are culled without further checks, all others go through {@link Block#shouldDrawSide}
+ * once per pair of states and direction and are memoized from there on
+ * <p>
+ * The resulting masks hold one bit per {@link Direction#getId()}, and are consumed by
+ * {@link WorldMesherBlockModelRenderer#setVisibleFaces(int)} so that culled faces never
+ * have their quads fetched - and blocks without any visible face are skipped entirely
+ */
+final class FaceVisibility {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private static final byte COMPUTED = 1, OPAQUE_FULL_CUBE = 2, HIDDEN_WHEN_ENCLOSED = 4;
+
+    private final TessellationResources resources;
+    private final WorldSnapshot world;
+    private final BlockPos origin;
+    private final BlockPos end;
+    private final boolean alwaysDrawVolumeEdges;
+
+    private final Reference2ByteOpenHashMap<BlockState> stateFlags = new Reference2ByteOpenHashMap<>();
+
+    // visible faces of a state toward each neighbor state, bits 0-5 mark
+    // the directions which were already tested and bits 8-13 the result
+    private final Reference2ObjectOpenHashMap<BlockState, Reference2IntOpenHashMap<BlockState>> pairs = new Reference2ObjectOpenHashMap<>();
+
+    // the section plus a one block margin, indexed by (z * sizeY + y) * sizeX + x
+    private final BlockState[] states = new BlockState[18 * 18 * 18];
+    private final boolean[] opaque = new boolean[18 * 18 * 18];
+    private final byte[] masks = new byte[18 * 18 * 18];
+    private int sizeX, sizeY;
+    private @Nullable MeshSection section = null;
+
+    private final BlockPos.Mutable pos = new BlockPos.Mutable();
+    private final BlockPos.Mutable neighborPos = new BlockPos.Mutable();
+    private final Random random = Random.createLocal();
+
+    FaceVisibility(TessellationResources resources, WorldSnapshot world, BlockPos origin, BlockPos end, boolean alwaysDrawVolumeEdges) {
+        this.resources = resources;
+        this.world = world;
+        this.origin = origin;
+        this.end = end;
+        this.alwaysDrawVolumeEdges = alwaysDrawVolumeEdges;
+    }
+
+    /**
+     * Compute the visible faces of every block in the given section,
+     * replacing those of the previously computed one
+     */
+    void compute(MeshSection section) {
+        var min = section.min();
+        var max = section.max();
+
+        this.sizeX = max.getX() - min.getX() + 3;
+        this.sizeY = max.getY() - min.getY() + 3;
+        int sizeZ = max.getZ() - min.getZ() + 3;
+
+        for (int z = 0; z < sizeZ; z++) {
+            for (int y = 0; y < this.sizeY; y++) {
+                for (int x = 0; x < this.sizeX; x++) {
+                    var state = this.world.getBlockState(this.pos.set(min.getX() + x - 1, min.getY() + y - 1, min.getZ() + z - 1));
+
+                    int index = (z * this.sizeY + y) * this.sizeX + x;
+                    this.states[index] = state;
+                    this.opaque[index] = (this.flags(state, this.pos) & OPAQUE_FULL_CUBE) != 0;
+                }
+            }
+        }
+
+        for (int z = 1; z < sizeZ - 1; z++) {
+            for (int y = 1; y < this.sizeY - 1; y++) {
+                for (int x = 1; x < this.sizeX - 1; x++) {
+                    int index = (z * this.sizeY + y) * this.sizeX + x;
+
+                    var state = this.states[index];
+                    this.masks[index] = state.isAir() ? 0 : (byte) this.computeMask(state, index, this.pos.set(min.getX() + x - 1, min.getY() + y - 1, min.getZ() + z - 1));
+                }
+            }
+        }
+
+        this.section = section;
+    }
+
+    /**
+     * Forget the computed section, so that every block
+     * is culled against the world by its renderer again
+     */
+    void clear() {
+        this.section = null;
+    }
+
+    /**
+     * @return The visible faces of the block at the given position, or {@link WorldMesherBlockModelRenderer#UNKNOWN_FACES}
+     * if it is not part of the last computed section
+     */
+    int visibleFaces(BlockPos pos) {
+        var section = this.section;
+        if (section == null) return WorldMesherBlockModelRenderer.UNKNOWN_FACES;
+
+        var min = section.min();
+        var max = section.max();
+        if (pos.getX() < min.getX() || pos.getY() < min.getY() || pos.getZ() < min.getZ()
+                || pos.getX() > max.getX() || pos.getY() > max.getY() || pos.getZ() > max.getZ()) {
+            return WorldMesherBlockModelRenderer.UNKNOWN_FACES;
+        }
+
+        return this.masks[((pos.getZ() - min.getZ() + 1) * this.sizeY + pos.getY() - min.getY() + 1) * this.sizeX + pos.getX() - min.getX() + 1];
+    }
+
+    /**
+     * Whether a block of the given state emits nothing at all once every one of its faces is
+     * culled - this is the case for opaque full cubes without block entities or fluids
+     * whose vanilla model has no faces that escape culling. Like vanilla's own face
+     * culling, this is decided once per state, at the first position it is asked for
+     */
+    boolean hiddenWhenEnclosed(BlockState state, BlockPos pos) {
+        return (this.flags(state, pos) & HIDDEN_WHEN_ENCLOSED) != 0;
+    }
+
+    private int computeMask(BlockState state, int index, BlockPos pos) {
+        boolean opaque = this.opaque[index];
+        int mask = 0;
+
+        for (var direction : DIRECTIONS) {
+            int neighborIndex = index + (direction.getOffsetZ() * this.sizeY + direction.getOffsetY()) * this.sizeX + direction.getOffsetX();
+            int bit = 1 << direction.getId();
+
+            if (this.alwaysDrawVolumeEdges && this.isVolumeEdge(pos, direction)) {
+                mask |= bit;
+            } else if (opaque && this.opaque[neighborIndex]) {
+                // both faces are full squares, which always cull each other
+            } else if (this.shouldDrawSide(state, this.states[neighborIndex], pos, direction)) {
+                mask |= bit;
+            }
+        }
+
+        return mask;
+    }
+
+    private boolean shouldDrawSide(BlockState state, BlockState neighbor, BlockPos pos, Direction direction) {
+        var neighbors = this.pairs.get(state);
+        if (neighbors == null) {
+            neighbors = new Reference2IntOpenHashMap<>();
+            this.pairs.put(state, neighbors);
+        }
+
+        int bit = 1 << direction.getId();
+        int entry = neighbors.getInt(neighbor);
+
+        if ((entry & bit) == 0) {
+            entry |= bit;
+            if (Block.shouldDrawSide(state, this.world, pos, direction, this.neighborPos.set(pos, direction))) {
+                entry |= bit << 8;
+            }
+
+            neighbors.put(neighbor, entry);
+        }
+
+        return (entry & bit << 8) != 0;
+    }
+
+    private boolean isVolumeEdge(BlockPos pos, Direction direction) {
+        return switch (direction) {
+            case DOWN -> pos.getY() == this.origin.getY();
+            case UP -> pos.getY() == this.end.getY();
+            case NORTH -> pos.getZ() == this.origin.getZ();
+            case SOUTH -> pos.getZ() == this.end.getZ();
+            case WEST -> pos.getX() == this.origin.getX();
+            case EAST -> pos.getX() == this.end.getX();
+        };
+    }
+
+    private byte flags(BlockState state, BlockPos pos) {
+        byte flags = this.stateFlags.getByte(state);
+        if (flags != 0) return flags;
+
+        flags = COMPUTED;
+        if (state.isOpaqueFullCube(this.world, pos)) {
+            flags |= OPAQUE_FULL_CUBE;
+
+            if (state.getRenderType() == BlockRenderType.MODEL && !state.hasBlockEntity() && state.getFluidState().isEmpty()) {
+                var model = this.resources.models().apply(state);
+
+                this.random.setSeed(state.getRenderingSeed(pos));
+                if (model.isVanillaAdapter() && model.getQuads(state, null, this.random).isEmpty()) {
+                    flags |= HIDDEN_WHEN_ENCLOSED;
+                }
+            }
+        }
+
+        this.stateFlags.put(state, flags);
+        return flags;
+    }
+}
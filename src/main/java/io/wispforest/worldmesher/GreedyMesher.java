@@ -0,0 +1,311 @@
+package io.wispforest.worldmesher;
+
+import io.wispforest.worldmesher.renderers.WorldMesherBlockModelRenderer;
+import io.wispforest.worldmesher.renderers.WorldMesherRenderLayers;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.block.BlockState;
+import net.minecraft.client.render.model.BakedModel;
+import net.minecraft.client.render.model.BakedQuad;
+import net.minecraft.client.texture.Sprite;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.random.Random;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the full, uniformly lit and tinted faces of full-cube models in a section
+ * and merges coplanar neighbors showing the same sprite into as few quads as possible.
+ * The merged quads are drawn with {@link WorldMesherRenderLayers#greedy()}, whose shader
+ * repeats the sprite once per block - any face which can not be drawn like that
+ * is rejected and emitted normally by the block renderer
+ */
+final class GreedyMesher implements WorldMesherBlockModelRenderer.FaceSink, AutoCloseable {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int VERTEX_SIZE = WorldMesherRenderLayers.GREEDY_FORMAT.getVertexSizeByte();
+
+    /**
+     * How far a normalized UV may be from a sprite corner to still count as
+     * that corner - baked quads are shrunk slightly toward the sprite's center
+     */
+    private static final float UV_EPSILON = .02f;
+    private static final int MAX_SPRITES = (1 << 13) - 1;
+
+    private static final int SWAP_AXES = 1, FLIP_U = 2, FLIP_V = 4;
+
+    private final BlockPos origin;
+
+    // one 16x16 grid per direction and slice of the current section, indexed by
+    // ((direction * 16 + slice) * 16 + b) * 16 + a. a key of 0 means there is no face
+    //
+    // key layout: color (32) | sky light (8) | block light (8) | sprite id (13) | orientation (3)
+    private final long[] faces = new long[DIRECTIONS.length * 16 * 16 * 16];
+    private int faceCount = 0;
+
+    private final Reference2IntOpenHashMap<Sprite> spriteIds = new Reference2IntOpenHashMap<>();
+    private final List<Sprite> sprites = new ArrayList<>();
+
+    private ByteBuffer vertices = MemoryUtil.memAlloc(VERTEX_SIZE * 4 * 256);
+    private int vertexCount = 0;
+
+    private int sectionX, sectionY, sectionZ;
+
+    GreedyMesher(BlockPos origin) {
+        this.origin = origin;
+    }
+
+    void beginSection(MeshSection section) {
+        this.sectionX = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackX(section.pos()));
+        this.sectionY = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackY(section.pos()));
+        this.sectionZ = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackZ(section.pos()));
+    }
+
+    /**
+     * Whether the faces of the given model may be offered to this mesher at all - this
+     * requires every face to have at most one quad, so that no overlay is ever split
+     * from the quad it is drawn on top of
+     */
+    boolean canMerge(BakedModel model, BlockState state, Random random, long seed) {
+        if (!model.isVanillaAdapter()) return false;
+
+        random.setSeed(seed);
+        if (!model.getQuads(state, null, random).isEmpty()) return false;
+
+        for (var direction : DIRECTIONS) {
+            random.setSeed(seed);
+            if (model.getQuads(state, direction, random).size() > 1) return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean accept(BlockPos pos, BakedQuad quad, float red, float green, float blue, float[] brightness, int[] light) {
+        // the grids only cover the current section
+        int localX = pos.getX() - this.sectionX, localY = pos.getY() - this.sectionY, localZ = pos.getZ() - this.sectionZ;
+        if ((localX | localY | localZ) < 0 || localX > 15 || localY > 15 || localZ > 15) return false;
+
+        if (brightness[0] != brightness[1] || brightness[0] != brightness[2] || brightness[0] != brightness[3]) return false;
+        if (light[0] != light[1] || light[0] != light[2] || light[0] != light[3]) return false;
+
+        var sprite = quad.getSprite();
+        if (sprite.getContents().getWidth() != 16 || sprite.getContents().getHeight() != 16) return false;
+
+        int[] vertexData = quad.getVertexData();
+        int packedColor = vertexData[3];
+        if (vertexData[11] != packedColor || vertexData[19] != packedColor || vertexData[27] != packedColor) return false;
+
+        var direction = quad.getFace();
+        var axis = direction.getAxis();
+        float plane = direction.getDirection() == Direction.AxisDirection.POSITIVE ? 1 : 0;
+
+        // the four corners of the face, in the plane coordinates of its axis
+        // and in normalized sprite coordinates. both have to be exactly 0 or 1
+        int orientations = 0xFF;
+        for (int vertex = 0; vertex < 4; vertex++) {
+            int offset = vertex * 8;
+            float x = Float.intBitsToFloat(vertexData[offset]);
+            float y = Float.intBitsToFloat(vertexData[offset + 1]);
+            float z = Float.intBitsToFloat(vertexData[offset + 2]);
+
+            if (axis.choose(x, y, z) != plane) return false;
+
+            float a = axis == Direction.Axis.X ? z : x;
+            float b = axis == Direction.Axis.Y ? z : y;
+            if ((a != 0 && a != 1) || (b != 0 && b != 1)) return false;
+
+            int spriteU = corner((Float.intBitsToFloat(vertexData[offset + 4]) - sprite.getMinU()) / (sprite.getMaxU() - sprite.getMinU()));
+            int spriteV = corner((Float.intBitsToFloat(vertexData[offset + 5]) - sprite.getMinV()) / (sprite.getMaxV() - sprite.getMinV()));
+            if (spriteU < 0 || spriteV < 0) return false;
+
+            for (int orientation = 0; orientation < 8; orientation++) {
+                if (tileU(orientation, a, b) != spriteU || tileV(orientation, a, b) != spriteV) {
+                    orientations &= ~(1 << orientation);
+                }
+            }
+        }
+
+        if (orientations == 0) return false;
+
+        int spriteId = this.spriteIds.getInt(sprite);
+        if (spriteId == 0) {
+            if (this.sprites.size() >= MAX_SPRITES) return false;
+
+            this.sprites.add(sprite);
+            spriteId = this.sprites.size();
+            this.spriteIds.put(sprite, spriteId);
+        }
+
+        long color = colorComponent(packedColor, 0, red, brightness[0])
+                | colorComponent(packedColor, 1, green, brightness[0]) << 8
+                | colorComponent(packedColor, 2, blue, brightness[0]) << 16;
+
+        long key = color << 32
+                | (long) ((light[0] >>> 16) & 0xFF) << 24
+                | (long) (light[0] & 0xFF) << 16
+                | (long) spriteId << 3
+                | Integer.numberOfTrailingZeros(orientations);
+
+        int slice = axis.choose(localX, localY, localZ);
+        int a = axis == Direction.Axis.X ? localZ : localX;
+        int b = axis == Direction.Axis.Y ? localZ : localY;
+
+        this.faces[((direction.getId() * 16 + slice) * 16 + b) * 16 + a] = key;
+        this.faceCount++;
+
+        return true;
+    }
+
+    /**
+     * Merge all faces collected in the current section and put the resulting
+     * quads into the given geometry, readying this mesher for the next section
+     */
+    void flush(SectionGeometry geometry) {
+        if (this.faceCount == 0) return;
+
+        this.vertices.clear();
+        this.vertexCount = 0;
+
+        for (var direction : DIRECTIONS) {
+            for (int slice = 0; slice < 16; slice++) {
+                this.mergeSlice(direction, slice);
+            }
+        }
+
+        this.faceCount = 0;
+
+        this.vertices.flip();
+        geometry.put(WorldMesherRenderLayers.greedy(), this.vertices, this.vertexCount);
+    }
+
+    /**
+     * Drop all faces collected in the current section
+     */
+    void reset() {
+        if (this.faceCount == 0) return;
+
+        Arrays.fill(this.faces, 0);
+        this.faceCount = 0;
+    }
+
+    private void mergeSlice(Direction direction, int slice) {
+        int base = (direction.getId() * 16 + slice) * 256;
+
+        for (int b = 0; b < 16; b++) {
+            for (int a = 0; a < 16; ) {
+                long key = this.faces[base + b * 16 + a];
+                if (key == 0) {
+                    a++;
+                    continue;
+                }
+
+                int width = 1;
+                while (a + width < 16 && this.faces[base + b * 16 + a + width] == key) width++;
+
+                int height = 1;
+                grow:
+                while (b + height < 16) {
+                    for (int i = 0; i < width; i++) {
+                        if (this.faces[base + (b + height) * 16 + a + i] != key) break grow;
+                    }
+                    height++;
+                }
+
+                for (int row = 0; row < height; row++) {
+                    int rowStart = base + (b + row) * 16 + a;
+                    Arrays.fill(this.faces, rowStart, rowStart + width, 0);
+                }
+
+                this.emitQuad(direction, slice, a, b, width, height, key);
+                a += width;
+            }
+        }
+    }
+
+    private void emitQuad(Direction direction, int slice, int a, int b, int width, int height, long key) {
+        if (this.vertices.remaining() < VERTEX_SIZE * 4) {
+            this.vertices = MemoryUtil.memRealloc(this.vertices, this.vertices.capacity() * 2);
+        }
+
+        var axis = direction.getAxis();
+        int plane = slice + (direction.getDirection() == Direction.AxisDirection.POSITIVE ? 1 : 0);
+
+        // counter-clockwise when looking at the face from the outside
+        boolean counterClockwise = (direction.getDirection() == Direction.AxisDirection.POSITIVE) == (axis == Direction.Axis.Z);
+
+        var sprite = this.sprites.get((int) (key >>> 3 & MAX_SPRITES) - 1);
+        int orientation = (int) (key & 7);
+
+        for (int corner = 0; corner < 4; corner++) {
+            int cornerA = corner == 1 || corner == 2 ? 1 : 0;
+            int cornerB = corner >= 2 ? 1 : 0;
+            if (!counterClockwise) {
+                int swap = cornerA;
+                cornerA = cornerB;
+                cornerB = swap;
+            }
+
+            int planeA = a + cornerA * width, planeB = b + cornerB * height;
+
+            int x = axis == Direction.Axis.X ? plane : planeA;
+            int y = axis == Direction.Axis.Y ? plane : planeB;
+            int z = axis == Direction.Axis.Z ? plane : axis == Direction.Axis.X ? planeA : planeB;
+
+            this.vertices.putFloat(x + this.sectionX - this.origin.getX());
+            this.vertices.putFloat(y + this.sectionY - this.origin.getY());
+            this.vertices.putFloat(z + this.sectionZ - this.origin.getZ());
+
+            this.vertices.put((byte) (key >>> 32));
+            this.vertices.put((byte) (key >>> 40));
+            this.vertices.put((byte) (key >>> 48));
+            this.vertices.put((byte) 0xFF);
+
+            this.vertices.putFloat(sprite.getMinU());
+            this.vertices.putFloat(sprite.getMinV());
+
+            this.vertices.putFloat(tileU(orientation, planeA, planeB));
+            this.vertices.putFloat(tileV(orientation, planeA, planeB));
+
+            this.vertices.putShort((short) (key >>> 16 & 0xFF));
+            this.vertices.putShort((short) (key >>> 24 & 0xFF));
+        }
+
+        this.vertexCount += 4;
+    }
+
+    @Override
+    public void close() {
+        MemoryUtil.memFree(this.vertices);
+    }
+
+    private static int tileU(int orientation, float a, float b) {
+        float u = (orientation & SWAP_AXES) != 0 ? b : a;
+        return (int) ((orientation & FLIP_U) != 0 ? 1 - u : u);
+    }
+
+    private static int tileV(int orientation, float a, float b) {
+        float v = (orientation & SWAP_AXES) != 0 ? a : b;
+        return (int) ((orientation & FLIP_V) != 0 ? 1 - v : v);
+    }
+
+    private static int corner(float normalized) {
+        if (Math.abs(normalized) < UV_EPSILON) return 0;
+        if (Math.abs(normalized - 1) < UV_EPSILON) return 1;
+        return -1;
+    }
+
+    /**
+     * Compute a color byte exactly like the block renderer and
+     * {@link net.minecraft.client.render.BufferBuilder} would
+     */
+    private static long colorComponent(int packedColor, int index, float tint, float brightness) {
+        float vertexColor = (float) WorldMesherBlockModelRenderer.colorByte(packedColor, index) / 255f;
+        return (int) (vertexColor * brightness * tint * 255f) & 0xFF;
+    }
+}
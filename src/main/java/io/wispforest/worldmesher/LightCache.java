@@ -0,0 +1,142 @@
+package io.wispforest.worldmesher;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.client.render.WorldRenderer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.BlockRenderView;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Caches the packed light and ambient occlusion brightness of every block in a section
+ * and the layer of blocks around it, which smooth lighting otherwise recomputes for every
+ * face touching that block. Values are filled lazily and keyed only by position - just
+ * like vanilla's own brightness cache, callers must pass the state at that position
+ * <p>
+ * Shared by the vanilla smooth lighting path of a tessellator and its Fabric API render
+ * context. Positions outside the prepared section are computed without being cached
+ */
+public final class LightCache {
+
+    private static final int UNSET_LIGHT = -1;
+
+    private final BlockRenderView world;
+
+    // the section plus a one block margin, indexed by (z * sizeY + y) * sizeX + x
+    private final int[] light = new int[18 * 18 * 18];
+    private final float[] ao = new float[18 * 18 * 18];
+    private int minX, minY, minZ;
+    private int sizeX, sizeY, sizeZ;
+    private boolean prepared = false;
+
+    private int hits = 0;
+    private int misses = 0;
+
+    LightCache(BlockRenderView world) {
+        this.world = world;
+    }
+
+    /**
+     * Forget all cached values and cache the given section from now on
+     */
+    void prepare(MeshSection section) {
+        this.minX = section.min().getX() - 1;
+        this.minY = section.min().getY() - 1;
+        this.minZ = section.min().getZ() - 1;
+        this.sizeX = section.max().getX() - this.minX + 2;
+        this.sizeY = section.max().getY() - this.minY + 2;
+        this.sizeZ = section.max().getZ() - this.minZ + 2;
+
+        int size = this.sizeX * this.sizeY * this.sizeZ;
+        Arrays.fill(this.light, 0, size, UNSET_LIGHT);
+        Arrays.fill(this.ao, 0, size, Float.NaN);
+
+        this.prepared = true;
+    }
+
+    /**
+     * Stop caching until the next section is prepared
+     */
+    void clear() {
+        this.prepared = false;
+    }
+
+    /**
+     * @return Whether this cache holds the light of the given world
+     */
+    public boolean caches(BlockRenderView world) {
+        return this.world == world;
+    }
+
+    /**
+     * @return The packed lightmap coordinates at the given position,
+     * see {@link WorldRenderer#getLightmapCoordinates(BlockRenderView, BlockState, BlockPos)}
+     */
+    public int light(BlockState state, BlockPos pos) {
+        int index = this.index(pos);
+        if (index < 0) {
+            this.misses++;
+            return WorldRenderer.getLightmapCoordinates(this.world, state, pos);
+        }
+
+        int light = this.light[index];
+        if (light != UNSET_LIGHT) {
+            this.hits++;
+            return light;
+        }
+
+        this.misses++;
+        return this.light[index] = WorldRenderer.getLightmapCoordinates(this.world, state, pos);
+    }
+
+    /**
+     * @return The ambient occlusion brightness at the given position,
+     * see {@link BlockState#getAmbientOcclusionLightLevel(net.minecraft.world.BlockView, BlockPos)}
+     */
+    public float ao(BlockState state, BlockPos pos) {
+        int index = this.index(pos);
+        if (index < 0) {
+            this.misses++;
+            return state.getAmbientOcclusionLightLevel(this.world, pos);
+        }
+
+        float ao = this.ao[index];
+        if (!Float.isNaN(ao)) {
+            this.hits++;
+            return ao;
+        }
+
+        this.misses++;
+        return this.ao[index] = state.getAmbientOcclusionLightLevel(this.world, pos);
+    }
+
+    /**
+     * Hand the hit and miss counts since the last call to the given
+     * geometry, so that they end up in the {@link BuildStats} of its build
+     */
+    void drainStats(SectionGeometry geometry) {
+        geometry.lightCacheHits += this.hits;
+        geometry.lightCacheMisses += this.misses;
+
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    private int index(BlockPos pos) {
+        if (!this.prepared) return -1;
+
+        int x = pos.getX() - this.minX, y = pos.getY() - this.minY, z = pos.getZ() - this.minZ;
+        if (x < 0 || y < 0 || z < 0 || x >= this.sizeX || y >= this.sizeY || z >= this.sizeZ) return -1;
+
+        return (z * this.sizeY + y) * this.sizeX + x;
+    }
+
+    /**
+     * Implemented by ambient occlusion calculators which read
+     * light through a cache, if they currently have one
+     */
+    public interface Holder {
+        @Nullable LightCache lightCache();
+    }
+}
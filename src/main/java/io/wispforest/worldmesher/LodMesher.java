@@ -0,0 +1,261 @@
+package io.wispforest.worldmesher;
+
+import net.minecraft.block.BlockRenderType;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.FluidBlock;
+import net.minecraft.client.render.*;
+import net.minecraft.client.texture.Sprite;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.random.Random;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Builds the coarse geometry of a level of detail. The blocks of a section are grouped
+ * into cubic cells, each of which takes on the most common non-air state inside it and
+ * is tessellated as a single cube showing that state's sprite on every visible face
+ * <p>
+ * Cells never cross section boundaries, so the levels of a section can
+ * be rebuilt together with its full-detail geometry
+ */
+final class LodMesher {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final TessellationResources resources;
+    private final WorldSnapshot world;
+    private final BlockPos origin;
+    private final BlockPos end;
+    private final boolean alwaysDrawVolumeEdges;
+
+    private final BlockState[] cells = new BlockState[8 * 8 * 8];
+    private final BlockState[] candidates = new BlockState[16 * 16 * 16];
+    private final int[] candidateCounts = new int[16 * 16 * 16];
+
+    private final BlockPos.Mutable pos = new BlockPos.Mutable();
+    private final Random random = Random.createLocal();
+
+    LodMesher(TessellationResources resources, WorldSnapshot world, BlockPos origin, BlockPos end, boolean alwaysDrawVolumeEdges) {
+        this.resources = resources;
+        this.world = world;
+        this.origin = origin;
+        this.end = end;
+        this.alwaysDrawVolumeEdges = alwaysDrawVolumeEdges;
+    }
+
+    /**
+     * Tessellate the cells of the given section into the builders provided by {@code builders}
+     *
+     * @param factor The edge length of a cell, must divide 16
+     */
+    void tessellate(MeshSection section, int factor, Function<RenderLayer, BufferBuilder> builders) {
+        int cellsPerAxis = 16 / factor;
+
+        int sectionX = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackX(section.pos()));
+        int sectionY = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackY(section.pos()));
+        int sectionZ = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackZ(section.pos()));
+
+        for (int cellZ = 0; cellZ < cellsPerAxis; cellZ++) {
+            for (int cellY = 0; cellY < cellsPerAxis; cellY++) {
+                for (int cellX = 0; cellX < cellsPerAxis; cellX++) {
+                    this.cells[(cellZ * cellsPerAxis + cellY) * cellsPerAxis + cellX] = this.vote(
+                            section,
+                            sectionX + cellX * factor, sectionY + cellY * factor, sectionZ + cellZ * factor,
+                            factor
+                    );
+                }
+            }
+        }
+
+        for (int cellZ = 0; cellZ < cellsPerAxis; cellZ++) {
+            for (int cellY = 0; cellY < cellsPerAxis; cellY++) {
+                for (int cellX = 0; cellX < cellsPerAxis; cellX++) {
+                    var state = this.cells[(cellZ * cellsPerAxis + cellY) * cellsPerAxis + cellX];
+                    if (state == null) continue;
+
+                    int minX = Math.max(sectionX + cellX * factor, section.min().getX()), maxX = Math.min(sectionX + (cellX + 1) * factor, section.max().getX() + 1);
+                    int minY = Math.max(sectionY + cellY * factor, section.min().getY()), maxY = Math.min(sectionY + (cellY + 1) * factor, section.max().getY() + 1);
+                    int minZ = Math.max(sectionZ + cellZ * factor, section.min().getZ()), maxZ = Math.min(sectionZ + (cellZ + 1) * factor, section.max().getZ() + 1);
+
+                    var layer = state.getBlock() instanceof FluidBlock
+                            ? RenderLayers.getFluidLayer(state.getFluidState())
+                            : RenderLayers.getBlockLayer(state);
+
+                    for (var direction : DIRECTIONS) {
+                        int neighborX = cellX + direction.getOffsetX(), neighborY = cellY + direction.getOffsetY(), neighborZ = cellZ + direction.getOffsetZ();
+
+                        boolean hidden;
+                        if (neighborX >= 0 && neighborX < cellsPerAxis && neighborY >= 0 && neighborY < cellsPerAxis && neighborZ >= 0 && neighborZ < cellsPerAxis) {
+                            var neighbor = this.cells[(neighborZ * cellsPerAxis + neighborY) * cellsPerAxis + neighborX];
+                            hidden = neighbor != null && (neighbor.isOpaque() || neighbor == state);
+                        } else {
+                            hidden = this.boundaryHidden(direction, minX, minY, minZ, maxX, maxY, maxZ);
+                        }
+
+                        if (hidden) continue;
+                        this.emitFace(builders.apply(layer), state, direction, minX, minY, minZ, maxX, maxY, maxZ);
+                    }
+                }
+            }
+        }
+
+        Arrays.fill(this.cells, null);
+    }
+
+    /**
+     * Find the most common state in the given cell, or {@code null} if more than half
+     * of it is air. Ties go to the state which was encountered first
+     */
+    private @Nullable BlockState vote(MeshSection section, int cellX, int cellY, int cellZ, int factor) {
+        int distinct = 0, air = 0, total = 0;
+
+        for (int z = Math.max(cellZ, section.min().getZ()); z <= Math.min(cellZ + factor - 1, section.max().getZ()); z++) {
+            for (int y = Math.max(cellY, section.min().getY()); y <= Math.min(cellY + factor - 1, section.max().getY()); y++) {
+                for (int x = Math.max(cellX, section.min().getX()); x <= Math.min(cellX + factor - 1, section.max().getX()); x++) {
+                    total++;
+
+                    var state = this.world.getBlockState(this.pos.set(x, y, z));
+                    if (state.isAir() || state.getRenderType() == BlockRenderType.INVISIBLE) {
+                        air++;
+                        continue;
+                    }
+
+                    int candidate = 0;
+                    while (candidate < distinct && this.candidates[candidate] != state) candidate++;
+
+                    if (candidate == distinct) {
+                        this.candidates[distinct] = state;
+                        this.candidateCounts[distinct++] = 0;
+                    }
+
+                    this.candidateCounts[candidate]++;
+                }
+            }
+        }
+
+        BlockState winner = null;
+        if (air * 2 <= total) {
+            int winnerCount = 0;
+            for (int candidate = 0; candidate < distinct; candidate++) {
+                if (this.candidateCounts[candidate] <= winnerCount) continue;
+
+                winner = this.candidates[candidate];
+                winnerCount = this.candidateCounts[candidate];
+            }
+        }
+
+        Arrays.fill(this.candidates, 0, distinct, null);
+        return winner;
+    }
+
+    /**
+     * Whether the face of a cell on the boundary of its section is covered. The neighboring
+     * cell is in another section, so only the layer of blocks directly across the boundary
+     * is looked at - the face is covered if at least half of those are opaque
+     */
+    private boolean boundaryHidden(Direction direction, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        var axis = direction.getAxis();
+        int plane = direction.getDirection() == Direction.AxisDirection.POSITIVE ? axis.choose(maxX, maxY, maxZ) : axis.choose(minX, minY, minZ) - 1;
+
+        if (this.alwaysDrawVolumeEdges && (plane < axis.choose(this.origin.getX(), this.origin.getY(), this.origin.getZ()) || plane > axis.choose(this.end.getX(), this.end.getY(), this.end.getZ()))) {
+            return false;
+        }
+
+        if (axis == Direction.Axis.X) minX = maxX = plane;
+        else if (axis == Direction.Axis.Y) minY = maxY = plane;
+        else minZ = maxZ = plane;
+
+        int opaque = 0, total = 0;
+        for (int z = minZ; z <= Math.max(minZ, maxZ - (axis == Direction.Axis.Z ? 0 : 1)); z++) {
+            for (int y = minY; y <= Math.max(minY, maxY - (axis == Direction.Axis.Y ? 0 : 1)); y++) {
+                for (int x = minX; x <= Math.max(minX, maxX - (axis == Direction.Axis.X ? 0 : 1)); x++) {
+                    total++;
+                    if (this.world.getBlockState(this.pos.set(x, y, z)).isOpaque()) opaque++;
+                }
+            }
+        }
+
+        return opaque * 2 >= total;
+    }
+
+    private void emitFace(VertexConsumer consumer, BlockState state, Direction direction, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        var model = this.resources.models().apply(state);
+
+        this.random.setSeed(42L);
+        var quads = model.getQuads(state, direction, this.random);
+        if (quads.isEmpty()) {
+            this.random.setSeed(42L);
+            quads = model.getQuads(state, null, this.random);
+        }
+
+        Sprite sprite;
+        int tintIndex = -1;
+        if (!quads.isEmpty()) {
+            var quad = quads.get(0);
+            sprite = quad.getSprite();
+            if (quad.hasColor()) tintIndex = quad.getColorIndex();
+        } else {
+            sprite = model.getParticleSprite();
+            if (!state.getFluidState().isEmpty()) tintIndex = 0;
+        }
+
+        var axis = direction.getAxis();
+        boolean positive = direction.getDirection() == Direction.AxisDirection.POSITIVE;
+
+        // sample color and light at the center of the face, from the block in front of it
+        this.pos.set((minX + maxX) / 2, (minY + maxY) / 2, (minZ + maxZ) / 2);
+        if (axis == Direction.Axis.X) this.pos.setX(positive ? maxX : minX - 1);
+        else if (axis == Direction.Axis.Y) this.pos.setY(positive ? maxY : minY - 1);
+        else this.pos.setZ(positive ? maxZ : minZ - 1);
+
+        int light = WorldRenderer.getLightmapCoordinates(this.world, this.pos);
+        float brightness = this.world.getBrightness(direction, true);
+
+        float red = brightness, green = brightness, blue = brightness;
+        if (tintIndex >= 0) {
+            int color = this.resources.blockColors().getColor(state, this.world, this.pos.move(direction.getOpposite()), tintIndex);
+            red *= (float) (color >> 16 & 0xFF) / 255f;
+            green *= (float) (color >> 8 & 0xFF) / 255f;
+            blue *= (float) (color & 0xFF) / 255f;
+        }
+
+        int plane = positive ? axis.choose(maxX, maxY, maxZ) : axis.choose(minX, minY, minZ);
+        int minA = axis == Direction.Axis.X ? minZ : minX, maxA = axis == Direction.Axis.X ? maxZ : maxX;
+        int minB = axis == Direction.Axis.Y ? minZ : minY, maxB = axis == Direction.Axis.Y ? maxZ : maxY;
+
+        // counter-clockwise when looking at the face from the outside
+        boolean counterClockwise = positive == (axis == Direction.Axis.Z);
+
+        for (int corner = 0; corner < 4; corner++) {
+            int cornerA = corner == 1 || corner == 2 ? 1 : 0;
+            int cornerB = corner >= 2 ? 1 : 0;
+            if (!counterClockwise) {
+                int swap = cornerA;
+                cornerA = cornerB;
+                cornerB = swap;
+            }
+
+            int a = cornerA == 0 ? minA : maxA, b = cornerB == 0 ? minB : maxB;
+
+            int x = axis == Direction.Axis.X ? plane : a;
+            int y = axis == Direction.Axis.Y ? plane : b;
+            int z = axis == Direction.Axis.Z ? plane : axis == Direction.Axis.X ? a : b;
+
+            // the sprite is stretched across the whole cell, upright on the sides
+            float u = sprite.getFrameU(cornerA * 16);
+            float v = sprite.getFrameV(axis == Direction.Axis.Y ? cornerB * 16 : 16 - cornerB * 16);
+
+            consumer.vertex(
+                    x - this.origin.getX(), y - this.origin.getY(), z - this.origin.getZ(),
+                    red, green, blue, 1f,
+                    u, v,
+                    OverlayTexture.DEFAULT_UV, light,
+                    direction.getOffsetX(), direction.getOffsetY(), direction.getOffsetZ()
+            );
+        }
+    }
+}
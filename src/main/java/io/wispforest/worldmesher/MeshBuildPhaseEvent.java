@@ -0,0 +1,23 @@
+package io.wispforest.worldmesher;
+
+import jdk.jfr.*;
+
+/**
+ * Emitted for every phase of a {@link WorldMesh} build, see {@link BuildStats.Phase}
+ */
+@Name("worldmesher.MeshBuildPhase")
+@Label("World Mesh Build Phase")
+@Category({"Minecraft", "WorldMesher"})
+@StackTrace(false)
+final class MeshBuildPhaseEvent extends Event {
+
+    @Label("Mesh")
+    @Description("Identity hash code of the mesh being built")
+    int mesh;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Partial Rebuild")
+    boolean partial;
+}
@@ -0,0 +1,345 @@
+package io.wispforest.worldmesher;
+
+import io.wispforest.worldmesher.renderers.WorldMesherRenderLayers;
+import net.minecraft.SharedConstants;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.render.RenderLayer;
+import net.minecraft.util.math.BlockPos;
+import org.jetbrains.annotations.Nullable;
+import org.lwjgl.system.MemoryUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * A size-bounded cache of built meshes on disk. A mesh whose content key is found
+ * in the cache is not tessellated at all - its file is memory-mapped and the
+ * vertex data of every layer is uploaded directly from the mapped region
+ * <p>
+ * Files are evicted least recently used first once the cache grows beyond its
+ * maximum size. Recency survives restarts through the modification time of the
+ * files, which is bumped whenever one of them is read
+ */
+public final class MeshCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MeshCache.class);
+
+    private static final int MAGIC = 0x574D5348; // WMSH
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".wmesh";
+
+    /**
+     * The layers which may be stored, in the order their indices are written in. New
+     * layers must only ever be appended, so that existing files stay readable
+     */
+    private static final List<RenderLayer> LAYERS = Stream.of(
+            RenderLayer.getBlockLayers().stream(),
+            Stream.of(WorldMesherRenderLayers.greedy()),
+            RenderLayer.getBlockLayers().stream().map(WorldMesherRenderLayers::compact).filter(Objects::nonNull)
+    ).flatMap(Function.identity()).toList();
+
+    private final Path directory;
+    private final long maxBytes;
+
+    // file sizes by key, least recently used first
+    private final LinkedHashMap<Long, Long> entries = new LinkedHashMap<>(16, .75f, true);
+    private long sizeBytes = 0;
+
+    /**
+     * @param directory The directory to keep the cached meshes in, created if it does not exist.
+     *                  Meshes already in it from earlier sessions are picked up
+     * @param maxBytes  How large all cached meshes together may get, in bytes
+     */
+    public MeshCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        try {
+            Files.createDirectories(directory);
+
+            record ExistingEntry(long key, long size, FileTime lastModified) {}
+
+            var existing = new ArrayList<ExistingEntry>();
+            try (var files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+                for (var file : files) {
+                    var name = file.getFileName().toString();
+
+                    long key;
+                    try {
+                        key = Long.parseUnsignedLong(name.substring(0, name.length() - EXTENSION.length()), 16);
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+
+                    existing.add(new ExistingEntry(key, Files.size(file), Files.getLastModifiedTime(file)));
+                }
+            }
+
+            existing.sort(Comparator.comparing(ExistingEntry::lastModified));
+            for (var entry : existing) {
+                this.entries.put(entry.key, entry.size);
+                this.sizeBytes += entry.size;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open mesh cache in " + directory, e);
+        }
+
+        synchronized (this) {
+            this.evict();
+        }
+    }
+
+    /**
+     * @return How many bytes all cached meshes together currently occupy on disk
+     */
+    public synchronized long sizeBytes() {
+        return this.sizeBytes;
+    }
+
+    public long maxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * Delete every cached mesh
+     */
+    public synchronized void clear() {
+        for (var key : new ArrayList<>(this.entries.keySet())) {
+            this.remove(key);
+        }
+    }
+
+    /**
+     * Map the mesh stored under the given key, if there is one and it was built for
+     * the given volume and levels of detail. The returned vertex data points
+     * directly into the mapped file and stays valid as long as it is referenced
+     */
+    @Nullable CachedMesh load(long key, BlockPos origin, BlockPos end, List<MeshLevel> levels) {
+        synchronized (this) {
+            if (this.entries.get(key) == null) return null;
+        }
+
+        var file = this.file(key);
+        try {
+            ByteBuffer data;
+            try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+
+            var mesh = read(data, key, origin, end, levels);
+            if (mesh == null) {
+                LOGGER.warn("Discarding mismatched cached mesh {}", file);
+                synchronized (this) {
+                    this.remove(key);
+                }
+                return null;
+            }
+
+            try {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException ignored) {}
+
+            return mesh;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not read cached mesh {}", file, e);
+            synchronized (this) {
+                this.remove(key);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Write the merged geometry of the given levels to the cache under the given key,
+     * then evict the least recently used meshes until the cache fits its maximum size.
+     * Nothing is written if the build the geometry belongs to was cancelled meanwhile
+     */
+    void store(long key, BlockPos origin, BlockPos end, List<MeshSection> order, List<MeshLevel> levels, CancellationToken token) {
+        // the merged layers are copies, the section geometry
+        // may be freed by a reset of the mesh while writing
+        var levelLayers = new ArrayList<Map<RenderLayer, SectionGeometry.LayerData>>(levels.size());
+        try {
+            for (var level : levels) {
+                var layers = level.mergedLayers(order);
+                levelLayers.add(layers);
+
+                if (!LAYERS.containsAll(layers.keySet())) return;
+            }
+
+            // a reset cancels the build before it frees any level, so
+            // this also catches a level copied after being freed
+            if (token.isCancelled()) return;
+
+            this.write(key, origin, end, levels, levelLayers);
+        } finally {
+            for (var layers : levelLayers) {
+                layers.values().forEach(layerData -> MemoryUtil.memFree(layerData.vertices()));
+            }
+        }
+    }
+
+    private void write(long key, BlockPos origin, BlockPos end, List<MeshLevel> levels, List<Map<RenderLayer, SectionGeometry.LayerData>> levelLayers) {
+        int headerSize = 4 * 3 + 1 + 8 + 4 * 6 + 4 + levels.size() * 8;
+        for (var layers : levelLayers) headerSize += layers.size() * (4 * 3 + 8 * 2);
+
+        var header = ByteBuffer.allocate(headerSize).order(ByteOrder.nativeOrder());
+        header.putInt(MAGIC).putInt(VERSION).putInt(headerSize);
+        header.put((byte) (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0));
+        header.putLong(key);
+        header.putInt(origin.getX()).putInt(origin.getY()).putInt(origin.getZ());
+        header.putInt(end.getX()).putInt(end.getY()).putInt(end.getZ());
+        header.putInt(levels.size());
+
+        long offset = headerSize;
+        for (int level = 0; level < levels.size(); level++) {
+            var layers = levelLayers.get(level);
+            header.putInt(levels.get(level).factor).putInt(layers.size());
+
+            for (var entry : layers.entrySet()) {
+                long length = entry.getValue().vertices().remaining();
+
+                header.putInt(LAYERS.indexOf(entry.getKey()));
+                header.putInt(entry.getKey().getVertexFormat().getVertexSizeByte());
+                header.putInt(entry.getValue().vertexCount());
+                header.putLong(offset).putLong(length);
+
+                offset += length;
+            }
+        }
+
+        var file = this.file(key);
+        var temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (var channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                header.flip();
+                writeFully(channel, header);
+
+                for (var layers : levelLayers) {
+                    for (var layerData : layers.values()) writeFully(channel, layerData.vertices().duplicate());
+                }
+            }
+
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Could not write cached mesh {}", file, e);
+
+            try {
+                Files.deleteIfExists(temporaryFile);
+            } catch (IOException ignored) {}
+            return;
+        }
+
+        synchronized (this) {
+            var previousSize = this.entries.put(key, offset);
+            this.sizeBytes += offset - (previousSize != null ? previousSize : 0);
+            this.evict();
+        }
+    }
+
+    /**
+     * Hash the game version and the names of all enabled resource packs, in
+     * order - a cached mesh is only valid for the models it was built with
+     */
+    static long resourceFingerprint() {
+        long fingerprint = SharedConstants.getGameVersion().getName().hashCode();
+        for (var pack : MinecraftClient.getInstance().getResourcePackManager().getEnabledNames()) {
+            fingerprint = fingerprint * 31 + pack.hashCode();
+        }
+
+        return fingerprint;
+    }
+
+    private static @Nullable CachedMesh read(ByteBuffer data, long key, BlockPos origin, BlockPos end, List<MeshLevel> levels) {
+        data.order(ByteOrder.nativeOrder());
+
+        if (data.getInt() != MAGIC || data.getInt() != VERSION) return null;
+        int headerSize = data.getInt();
+        if (data.get() != (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0)) return null;
+        if (data.getLong() != key) return null;
+
+        if (data.getInt() != origin.getX() || data.getInt() != origin.getY() || data.getInt() != origin.getZ()) return null;
+        if (data.getInt() != end.getX() || data.getInt() != end.getY() || data.getInt() != end.getZ()) return null;
+        if (data.getInt() != levels.size()) return null;
+
+        var cachedLevels = new ArrayList<Map<RenderLayer, CachedLayer>>();
+        for (var level : levels) {
+            if (data.getInt() != level.factor) return null;
+
+            int layerCount = data.getInt();
+            var layers = new LinkedHashMap<RenderLayer, CachedLayer>();
+            for (int i = 0; i < layerCount; i++) {
+                int layerIndex = data.getInt();
+                if (layerIndex < 0 || layerIndex >= LAYERS.size()) return null;
+
+                var layer = LAYERS.get(layerIndex);
+                if (data.getInt() != layer.getVertexFormat().getVertexSizeByte()) return null;
+
+                int vertexCount = data.getInt();
+                long offset = data.getLong(), length = data.getLong();
+                if (offset < headerSize || offset + length > data.capacity()) return null;
+                if (length != (long) vertexCount * layer.getVertexFormat().getVertexSizeByte()) return null;
+
+                layers.put(layer, new CachedLayer(data.slice((int) offset, (int) length).order(ByteOrder.nativeOrder()), vertexCount));
+            }
+
+            cachedLevels.add(layers);
+        }
+
+        return new CachedMesh(cachedLevels);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    private void evict() {
+        var iterator = this.entries.entrySet().iterator();
+        while (this.sizeBytes > this.maxBytes && iterator.hasNext()) {
+            var entry = iterator.next();
+            iterator.remove();
+
+            this.sizeBytes -= entry.getValue();
+            this.delete(entry.getKey());
+        }
+    }
+
+    private void remove(long key) {
+        var size = this.entries.remove(key);
+        if (size == null) return;
+
+        this.sizeBytes -= size;
+        this.delete(key);
+    }
+
+    private void delete(long key) {
+        try {
+            Files.deleteIfExists(this.file(key));
+        } catch (IOException e) {
+            LOGGER.warn("Could not delete cached mesh {}", this.file(key), e);
+        }
+    }
+
+    private Path file(long key) {
+        return this.directory.resolve(Long.toHexString(key) + EXTENSION);
+    }
+
+    /**
+     * The vertex data of a cached mesh, one map of layers per level of detail
+     */
+    record CachedMesh(List<Map<RenderLayer, CachedLayer>> levels) {}
+
+    /**
+     * @param vertices The encoded vertices of the layer, mapped from the cache file
+     */
+    record CachedLayer(ByteBuffer vertices, int vertexCount) {}
+}
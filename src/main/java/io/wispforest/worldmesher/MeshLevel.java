@@ -0,0 +1,672 @@
+package io.wispforest.worldmesher;
+
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.systems.VertexSorter;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMaps;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import net.minecraft.client.gl.VertexBuffer;
+import net.minecraft.client.render.BufferBuilder;
+import net.minecraft.client.render.RenderLayer;
+import net.minecraft.util.Util;
+import org.jetbrains.annotations.Nullable;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * One level of detail of a {@link WorldMesh} - the retained geometry of each of
+ * its sections, and the per-layer vertex buffers that geometry is merged into
+ */
+final class MeshLevel implements AutoCloseable {
+
+    /**
+     * The edge length of the cells this level is built from, in blocks. The
+     * full-detail level has a factor of 1
+     */
+    final int factor;
+
+    /**
+     * The vertex buffers of this level, only ever touched on the render thread
+     */
+    final Map<RenderLayer, VertexBuffer> buffers = new HashMap<>();
+
+    /**
+     * Where each section lies in the vertex buffer of every layer, only ever touched
+     * on the render thread. Layers without ranges are always drawn in full
+     */
+    final Map<RenderLayer, SectionRanges> ranges = new HashMap<>();
+
+    /**
+     * How many bytes were uploaded into the vertex buffer of every
+     * layer, including its indices. Only ever touched on the render thread
+     */
+    final Object2LongMap<RenderLayer> bufferBytes = new Object2LongOpenHashMap<>();
+
+    /**
+     * Whether the vertex buffers of this level were released by {@link #evict(boolean)}
+     * while its section geometry was kept, in which case the next merge merges every layer
+     */
+    private volatile boolean evicted = false;
+
+    /**
+     * The quad centers of the current translucent vertex buffer,
+     * only ever replaced on the render thread
+     */
+    private volatile @Nullable TranslucentSorting translucentSorting = null;
+
+    /**
+     * The vertex buffers of every section uploaded on its own by a progressive build which
+     * is not committed yet, only ever touched on the render thread. These sections are
+     * excluded from the merged buffers of every layer which has section ranges
+     */
+    final Int2ObjectMap<Map<RenderLayer, VertexBuffer>> progressiveBuffers = new Int2ObjectOpenHashMap<>();
+    final BitSet progressiveSections = new BitSet();
+
+    private final Long2ObjectMap<SectionGeometry> sections = new Long2ObjectOpenHashMap<>();
+    private volatile Object2IntMap<RenderLayer> sectionSizeHints = Object2IntMaps.emptyMap();
+
+    MeshLevel(int factor) {
+        this.factor = factor;
+    }
+
+    /**
+     * Replace the geometry of every rebuilt section, then merge all layers which
+     * changed because of that into fresh builders taken from the given pool
+     * <p>
+     * Layers in which every rebuilt section has as many vertices as the current vertex
+     * buffer holds for it are not merged again -
+     * only the vertex data of the rebuilt sections is copied, and written over their old
+     * ranges of the existing vertex buffer once the merge is committed. The translucent
+     * layer is always merged in full, since it is sorted as a whole
+     *
+     * @param order        The sections of the mesh, in the order they are merged in
+     * @param rebuilt      The new geometry of every rebuilt section, owned by this level afterwards
+     * @param fullRebuild  Whether every section was rebuilt, in which case every existing
+     *                     layer is replaced even if no section produces it anymore
+     * @param mergeVisitor Called with the geometry of every section in the mesh, in merge order
+     */
+    PendingUpload merge(List<MeshSection> order, List<SectionGeometry> rebuilt, boolean fullRebuild, NativeBufferPool bufferPool, Consumer<SectionGeometry> mergeVisitor) {
+        var changedLayers = new HashSet<RenderLayer>();
+        var builders = new HashMap<RenderLayer, BufferBuilder>();
+        var rangeBuilders = new HashMap<RenderLayer, RangesBuilder>();
+        var splices = new HashMap<RenderLayer, Splice>();
+
+        synchronized (this.sections) {
+            this.sections.values().forEach(SectionGeometry::inflate);
+
+            // an evicted level has no vertex buffers left to splice into
+            boolean canSplice = !fullRebuild && !this.evicted;
+            var rebuiltSections = new LongOpenHashSet();
+
+            if (fullRebuild) changedLayers.addAll(this.buffers.keySet());
+            if (this.evicted) {
+                for (var geometry : this.sections.values()) changedLayers.addAll(geometry.layers().keySet());
+            }
+
+            for (var geometry : rebuilt) {
+                rebuiltSections.add(geometry.section.pos());
+
+                var sectionLayers = new HashSet<>(geometry.layers().keySet());
+                var discardedGeometry = this.sections.put(geometry.section.pos(), geometry);
+                if (discardedGeometry != null) sectionLayers.addAll(discardedGeometry.layers().keySet());
+
+                changedLayers.addAll(sectionLayers);
+                if (discardedGeometry != null) discardedGeometry.close();
+            }
+
+            // the ranges are only ever replaced on the render thread by a commit, which
+            // cannot happen while this merge runs - and are verified again before splicing.
+            // they describe what the vertex buffer actually holds, unlike the retained
+            // geometry, which is already replaced even if the upload of a build fails
+            var spliceRanges = new HashMap<RenderLayer, SectionRanges>();
+            if (canSplice) {
+                var sectionIndices = new Long2IntOpenHashMap(order.size());
+                sectionIndices.defaultReturnValue(-1);
+                for (int sectionIndex = 0; sectionIndex < order.size(); sectionIndex++) {
+                    sectionIndices.put(order.get(sectionIndex).pos(), sectionIndex);
+                }
+
+                layers:
+                for (var layer : changedLayers) {
+                    if (layer == RenderLayer.getTranslucent()) continue;
+
+                    var ranges = this.ranges.get(layer);
+                    if (ranges == null) continue;
+
+                    for (var geometry : rebuilt) {
+                        if (vertexCount(geometry, layer) != ranges.vertexCount(sectionIndices.get(geometry.section.pos()))) continue layers;
+                    }
+
+                    spliceRanges.put(layer, ranges);
+                }
+
+                changedLayers.removeAll(spliceRanges.keySet());
+            }
+
+            // size every builder for exactly what is merged into it, so that
+            // none of them ever grow. the largest section of each layer is
+            // remembered for sizing the tessellator builders of the next build
+            var layerBytes = new Object2IntOpenHashMap<RenderLayer>();
+            var spliceBytes = new Object2IntOpenHashMap<RenderLayer>();
+            var sizeHintsUpdate = new Object2IntOpenHashMap<RenderLayer>();
+            for (var geometry : this.sections.values()) {
+                boolean rebuiltSection = rebuiltSections.contains(geometry.section.pos());
+                geometry.layers().forEach((layer, layerData) -> {
+                    int bytes = layerData.vertices().remaining();
+                    layerBytes.addTo(layer, bytes);
+                    if (rebuiltSection) spliceBytes.addTo(layer, bytes);
+                    sizeHintsUpdate.mergeInt(layer, bytes, Math::max);
+                });
+            }
+
+            this.sectionSizeHints = sizeHintsUpdate;
+
+            // merge in section order, not completion order, so that
+            // the result does not depend on how the sections were scheduled.
+            // layers which no section changed keep their current buffers
+            var spliceBuilders = new HashMap<RenderLayer, SpliceBuilder>();
+            for (int sectionIndex = 0; sectionIndex < order.size(); sectionIndex++) {
+                var geometry = this.sections.get(order.get(sectionIndex).pos());
+                if (geometry == null) continue;
+
+                final int section = sectionIndex;
+                final boolean rebuiltSection = rebuiltSections.contains(geometry.section.pos());
+                geometry.layers().forEach((layer, layerData) -> {
+                    var ranges = spliceRanges.get(layer);
+                    if (ranges != null) {
+                        if (!rebuiltSection || layerData.vertexCount() == 0) return;
+
+                        int vertexSize = layerData.vertices().remaining() / layerData.vertexCount();
+                        spliceBuilders.computeIfAbsent(layer, $ -> new SpliceBuilder(ranges, spliceBytes.getInt(layer)))
+                                .add(ranges.firstVertex(section) * vertexSize, layerData.vertices());
+
+                        return;
+                    }
+
+                    if (!changedLayers.contains(layer)) return;
+
+                    var builder = builders.get(layer);
+                    if (builder == null) {
+                        builder = bufferPool.acquire(layerBytes.getInt(layer));
+                        builder.begin(layer.getDrawMode(), layer.getVertexFormat());
+                        builders.put(layer, builder);
+                    }
+
+                    rangeBuilders.computeIfAbsent(layer, $ -> new RangesBuilder()).add(section, layerData.vertexCount());
+                    BufferBuilders.append(builder, layerData.vertices(), layerData.vertexCount());
+                });
+
+                mergeVisitor.accept(geometry);
+            }
+
+            spliceBuilders.forEach((layer, spliceBuilder) -> splices.put(layer, spliceBuilder.build()));
+        }
+
+        var ranges = new HashMap<RenderLayer, SectionRanges>();
+        rangeBuilders.forEach((layer, rangesBuilder) -> ranges.put(layer, rangesBuilder.build()));
+
+        return new PendingUpload(changedLayers, builders, new HashMap<>(), new HashMap<>(), ranges, new HashMap<>(), new Object2LongOpenHashMap<>(), List.of(), splices);
+    }
+
+    private static int vertexCount(@Nullable SectionGeometry geometry, RenderLayer layer) {
+        if (geometry == null) return 0;
+
+        var layerData = geometry.layers().get(layer);
+        return layerData != null ? layerData.vertexCount() : 0;
+    }
+
+    /**
+     * Replace all geometry of this level with the given cached layers. The section geometry
+     * is discarded in the process, so the next build of this level must rebuild every section.
+     * The translucent layer is copied into a builder taken from the given pool so that it can
+     * be sorted, every other layer is uploaded straight from the cached vertex data
+     */
+    PendingUpload load(Map<RenderLayer, MeshCache.CachedLayer> layers, NativeBufferPool bufferPool) {
+        var changedLayers = new HashSet<RenderLayer>(this.buffers.keySet());
+        changedLayers.addAll(layers.keySet());
+
+        synchronized (this.sections) {
+            this.sections.values().forEach(SectionGeometry::close);
+            this.sections.clear();
+        }
+
+        var builders = new HashMap<RenderLayer, BufferBuilder>();
+        var builtBuffers = new HashMap<RenderLayer, BufferBuilder.BuiltBuffer>();
+        var wrappedBuilders = new ArrayList<BufferBuilder>();
+
+        layers.forEach((layer, cachedLayer) -> {
+            if (layer == RenderLayer.getTranslucent()) {
+                var builder = bufferPool.acquire(cachedLayer.vertices().remaining());
+                builder.begin(layer.getDrawMode(), layer.getVertexFormat());
+                BufferBuilders.append(builder, cachedLayer.vertices(), cachedLayer.vertexCount());
+
+                builders.put(layer, builder);
+            } else {
+                var builder = BufferBuilders.wrap(cachedLayer.vertices(), cachedLayer.vertexCount(), layer.getDrawMode(), layer.getVertexFormat());
+
+                builtBuffers.put(layer, builder.end());
+                wrappedBuilders.add(builder);
+            }
+        });
+
+        return new PendingUpload(changedLayers, builders, builtBuffers, new HashMap<>(), Map.of(), new HashMap<>(), new Object2LongOpenHashMap<>(), wrappedBuilders, Map.of());
+    }
+
+    /**
+     * Copy the geometry of every layer of this level into one natively allocated buffer
+     * per layer, with the vertex data of each layer in the order of its sections. The
+     * copies are taken under the sections lock, so a concurrent {@link #close()} cannot
+     * free the geometry while it is read - freeing the copies is the caller's responsibility
+     */
+    Map<RenderLayer, SectionGeometry.LayerData> mergedLayers(List<MeshSection> order) {
+        var layers = new LinkedHashMap<RenderLayer, SectionGeometry.LayerData>();
+
+        synchronized (this.sections) {
+            this.sections.values().forEach(SectionGeometry::inflate);
+
+            var geometries = new ArrayList<SectionGeometry>(order.size());
+            for (var section : order) {
+                var geometry = this.sections.get(section.pos());
+                if (geometry != null) geometries.add(geometry);
+            }
+
+            var byteSizes = new Object2IntOpenHashMap<RenderLayer>();
+            var vertexCounts = new Object2IntOpenHashMap<RenderLayer>();
+            for (var geometry : geometries) {
+                geometry.layers().forEach((layer, layerData) -> {
+                    byteSizes.addTo(layer, layerData.vertices().remaining());
+                    vertexCounts.addTo(layer, layerData.vertexCount());
+                });
+            }
+
+            for (var geometry : geometries) {
+                geometry.layers().forEach((layer, layerData) -> {
+                    var merged = layers.computeIfAbsent(layer, $ -> new SectionGeometry.LayerData(MemoryUtil.memAlloc(byteSizes.getInt(layer)), vertexCounts.getInt(layer)));
+                    merged.vertices().put(layerData.vertices().duplicate());
+                });
+            }
+        }
+
+        layers.values().forEach(layerData -> layerData.vertices().flip());
+        return layers;
+    }
+
+    /**
+     * Create one upload for the built buffer of every layer the given merge did not remove.
+     * Each of them uploads into a fresh vertex buffer which is not drawn
+     * until the merge is {@linkplain #commit(PendingUpload, NativeBufferPool) committed}
+     */
+    List<UploadQueue.Upload> uploads(PendingUpload pending) {
+        var uploads = new ArrayList<UploadQueue.Upload>();
+        pending.builtBuffers.forEach((renderLayer, builtBuffer) -> {
+            // uploading releases the built buffer, so its size is taken beforehand
+            long byteSize = builtBufferBytes(builtBuffer);
+
+            uploads.add(new UploadQueue.Upload() {
+                @Override
+                public long byteSize() {
+                    return byteSize;
+                }
+
+                @Override
+                public void upload() {
+                    RenderSystem.assertOnRenderThread();
+
+                    var newBuffer = new VertexBuffer(VertexBuffer.Usage.STATIC);
+                    pending.stagedBuffers.put(renderLayer, newBuffer);
+                    pending.stagedBytes.put(renderLayer, byteSize);
+
+                    newBuffer.bind();
+                    newBuffer.upload(builtBuffer);
+                }
+            });
+        });
+
+        return uploads;
+    }
+
+    /**
+     * Copy the given geometry of a single section into builders taken from the given pool,
+     * and create an upload which makes it drawable on its own until the
+     * next commit or discard of this level. The builders go back to the pool
+     * once the queue is done with the upload
+     *
+     * @param section The index of the section in the merge order
+     */
+    UploadQueue.Upload progressiveUpload(int section, SectionGeometry geometry, NativeBufferPool bufferPool, VertexSorter translucentSorter) {
+        var builders = new HashMap<RenderLayer, BufferBuilder>();
+        var builtBuffers = new HashMap<RenderLayer, BufferBuilder.BuiltBuffer>();
+
+        geometry.layers().forEach((layer, layerData) -> {
+            var builder = bufferPool.acquire(layerData.vertices().remaining());
+            builder.begin(layer.getDrawMode(), layer.getVertexFormat());
+            BufferBuilders.append(builder, layerData.vertices(), layerData.vertexCount());
+
+            if (layer == RenderLayer.getTranslucent()) builder.setSorter(translucentSorter);
+
+            builders.put(layer, builder);
+            builtBuffers.put(layer, builder.end());
+        });
+
+        long byteSize = builtBuffers.values().stream().mapToLong(MeshLevel::builtBufferBytes).sum();
+
+        return new UploadQueue.Upload() {
+            @Override
+            public long byteSize() {
+                return byteSize;
+            }
+
+            @Override
+            public void upload() {
+                RenderSystem.assertOnRenderThread();
+
+                var buffers = new HashMap<RenderLayer, VertexBuffer>();
+                try {
+                    for (var iterator = builtBuffers.entrySet().iterator(); iterator.hasNext(); ) {
+                        var entry = iterator.next();
+
+                        // uploading releases the built buffer, even if it fails
+                        iterator.remove();
+
+                        var buffer = new VertexBuffer(VertexBuffer.Usage.STATIC);
+                        buffers.put(entry.getKey(), buffer);
+
+                        buffer.bind();
+                        buffer.upload(entry.getValue());
+                    }
+                } catch (Throwable throwable) {
+                    buffers.values().forEach(VertexBuffer::close);
+                    throw throwable;
+                }
+
+                var discardedBuffers = MeshLevel.this.progressiveBuffers.put(section, buffers);
+                if (discardedBuffers != null) discardedBuffers.values().forEach(VertexBuffer::close);
+
+                MeshLevel.this.progressiveSections.set(section);
+            }
+
+            @Override
+            public void finish() {
+                builtBuffers.values().forEach(BufferBuilder.BuiltBuffer::release);
+                builtBuffers.clear();
+
+                builders.values().forEach(bufferPool::release);
+                builders.clear();
+            }
+
+            @Override
+            public void discard() {
+                this.finish();
+            }
+        };
+    }
+
+    private static long builtBufferBytes(BufferBuilder.BuiltBuffer builtBuffer) {
+        return builtBuffer.getVertexBuffer().remaining() + builtBuffer.getIndexBuffer().remaining();
+    }
+
+    /**
+     * @return Whether the progressively uploaded sections of the given layer can be drawn
+     * next to its merged buffer, which is the case if there either is none or
+     * the sections they replace can be excluded from it
+     */
+    boolean canDrawProgressive(RenderLayer renderLayer) {
+        return !this.buffers.containsKey(renderLayer) || (renderLayer != RenderLayer.getTranslucent() && this.ranges.containsKey(renderLayer));
+    }
+
+    /**
+     * Release the vertex buffers of all progressively uploaded sections.
+     * Must be called on the render thread
+     */
+    void clearProgressive() {
+        this.progressiveBuffers.values().forEach(buffers -> buffers.values().forEach(VertexBuffer::close));
+        this.progressiveBuffers.clear();
+        this.progressiveSections.clear();
+    }
+
+    /**
+     * Replace the vertex buffers of all layers changed by the given merge with the ones
+     * its uploads staged, and drop all progressively uploaded sections, all at once. Must be called on the render thread after every
+     * upload was performed, after which the builders are handed back to the given pool
+     */
+    void commit(PendingUpload pending, NativeBufferPool bufferPool) {
+        pending.splices.forEach((renderLayer, splice) -> {
+            // a commit always follows the one whose ranges the splice was made
+            // against, unless the level was closed in between - then it is moot
+            var buffer = this.buffers.get(renderLayer);
+            if (buffer != null && this.ranges.get(renderLayer) == splice.ranges()) splice.apply(buffer);
+
+            splice.free();
+        });
+
+        for (var renderLayer : pending.changedLayers) {
+            var newBuffer = pending.stagedBuffers.get(renderLayer);
+
+            var discardedBuffer = newBuffer != null
+                    ? this.buffers.put(renderLayer, newBuffer)
+                    : this.buffers.remove(renderLayer);
+
+            if (discardedBuffer != null) {
+                discardedBuffer.close();
+            }
+
+            if (newBuffer != null) {
+                this.bufferBytes.put(renderLayer, pending.stagedBytes.getLong(renderLayer));
+            } else {
+                this.bufferBytes.removeLong(renderLayer);
+            }
+
+            var ranges = newBuffer != null ? pending.ranges.get(renderLayer) : null;
+            if (ranges != null) {
+                this.ranges.put(renderLayer, ranges);
+            } else {
+                this.ranges.remove(renderLayer);
+            }
+
+            if (renderLayer == RenderLayer.getTranslucent()) {
+                var sortingData = pending.sortingData.get(renderLayer);
+                this.translucentSorting = newBuffer != null && sortingData != null
+                        ? new TranslucentSorting(newBuffer, sortingData)
+                        : null;
+            }
+        }
+
+        this.clearProgressive();
+        this.evicted = false;
+
+        pending.builders.values().forEach(bufferPool::release);
+        pending.wrappedBuilders.forEach(BufferBuilders::unwrap);
+    }
+
+    /**
+     * Release the vertex buffers of this level but keep its section geometry, so that
+     * the next merge can restore every layer without tessellating anything. Must be called
+     * on the render thread
+     *
+     * @param compressGeometry Whether to deflate the kept section geometry onto the heap, which
+     *                         happens on the main worker executor and is undone by the next merge
+     */
+    void evict(boolean compressGeometry) {
+        this.buffers.values().forEach(VertexBuffer::close);
+        this.buffers.clear();
+        this.ranges.clear();
+        this.bufferBytes.clear();
+        this.translucentSorting = null;
+        this.clearProgressive();
+
+        this.evicted = true;
+        if (!compressGeometry) return;
+
+        Util.getMainWorkerExecutor().execute(() -> {
+            synchronized (this.sections) {
+                // the level may have been merged again in the meantime
+                if (this.evicted) this.sections.values().forEach(SectionGeometry::compress);
+            }
+        });
+    }
+
+    /**
+     * Drop the given merge and all progressively uploaded sections, releasing whatever
+     * the uploads of the merge staged so far. Must be called on the render thread,
+     * the merged vertex buffers of this level stay untouched
+     */
+    void discard(PendingUpload pending, NativeBufferPool bufferPool) {
+        pending.stagedBuffers.values().forEach(VertexBuffer::close);
+        pending.builtBuffers.forEach((renderLayer, builtBuffer) -> {
+            if (!pending.stagedBuffers.containsKey(renderLayer)) builtBuffer.release();
+        });
+
+        this.clearProgressive();
+
+        pending.splices.values().forEach(Splice::free);
+        pending.builders.values().forEach(bufferPool::release);
+        pending.wrappedBuilders.forEach(BufferBuilders::unwrap);
+    }
+
+    /**
+     * @return The translucent vertex buffer of this level together with the
+     * quad centers needed to sort it, or {@code null} if it has none
+     */
+    @Nullable TranslucentSorting translucentSorting() {
+        return this.translucentSorting;
+    }
+
+    /**
+     * @return How many bytes a single section emitted into each layer at most, as of the last merge
+     */
+    Object2IntMap<RenderLayer> sectionSizeHints() {
+        return this.sectionSizeHints;
+    }
+
+    /**
+     * Release all vertex buffers and section geometry of this level. Must be called
+     * on the render thread, the level may be built again afterwards
+     */
+    @Override
+    public void close() {
+        this.buffers.values().forEach(VertexBuffer::close);
+        this.buffers.clear();
+        this.ranges.clear();
+        this.bufferBytes.clear();
+        this.evicted = false;
+        this.translucentSorting = null;
+        this.clearProgressive();
+
+        synchronized (this.sections) {
+            this.sections.values().forEach(SectionGeometry::close);
+            this.sections.clear();
+        }
+    }
+
+    /**
+     * The result of merging a level, waiting to be uploaded
+     *
+     * @param changedLayers   Every layer whose vertex buffer is replaced or removed
+     * @param builders        The builders holding the merged vertex data of each layer that still has any
+     * @param builtBuffers    The built buffers of each builder, filled in once they are ended
+     * @param sortingData     The quad centers of each sorted layer, filled in once its builder is ended
+     * @param ranges          Where each section lies in the merged vertex data of each layer, if known
+     * @param stagedBuffers   The vertex buffers each built buffer was uploaded into, filled in by the uploads
+     * @param stagedBytes     How many bytes were uploaded into each staged vertex buffer
+     * @param wrappedBuilders Builders wrapping memory they do not own, which must be unwrapped after uploading
+     * @param splices         The rebuilt sections of each layer which is updated in place instead of being replaced
+     */
+    record PendingUpload(Set<RenderLayer> changedLayers, Map<RenderLayer, BufferBuilder> builders, Map<RenderLayer, BufferBuilder.BuiltBuffer> builtBuffers, Map<RenderLayer, BufferBuilder.TransparentSortingData> sortingData, Map<RenderLayer, SectionRanges> ranges, Map<RenderLayer, VertexBuffer> stagedBuffers, Object2LongMap<RenderLayer> stagedBytes, List<BufferBuilder> wrappedBuilders, Map<RenderLayer, Splice> splices) {}
+
+    /**
+     * The vertex data of the rebuilt sections of a layer, copied out of their geometry so that
+     * it stays valid until the commit, together with where each section lies in the vertex buffer
+     *
+     * @param ranges      The ranges of the layer the offsets were taken from
+     * @param vertices    The vertex data of all rebuilt sections, one after the other
+     * @param byteOffsets Where in the vertex buffer the data of each section goes
+     * @param byteLengths How many bytes of vertex data each section has
+     */
+    record Splice(SectionRanges ranges, ByteBuffer vertices, int[] byteOffsets, int[] byteLengths) {
+
+        /**
+         * Write the data of every section over its range of the given vertex buffer,
+         * which must be the one the ranges of this splice describe
+         */
+        void apply(VertexBuffer buffer) {
+            RenderSystem.assertOnRenderThread();
+
+            GlStateManager._glBindBuffer(GL15.GL_ARRAY_BUFFER, buffer.vertexBufferId);
+
+            int position = 0;
+            for (int section = 0; section < this.byteOffsets.length; section++) {
+                GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, this.byteOffsets[section], MemoryUtil.memSlice(this.vertices, position, this.byteLengths[section]));
+                position += this.byteLengths[section];
+            }
+
+            GlStateManager._glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        }
+
+        void free() {
+            MemoryUtil.memFree(this.vertices);
+        }
+    }
+
+    private static final class SpliceBuilder {
+
+        private final SectionRanges ranges;
+        private final ByteBuffer vertices;
+        private final IntList byteOffsets = new IntArrayList();
+        private final IntList byteLengths = new IntArrayList();
+
+        SpliceBuilder(SectionRanges ranges, int bytes) {
+            this.ranges = ranges;
+            this.vertices = MemoryUtil.memAlloc(bytes);
+        }
+
+        void add(int byteOffset, ByteBuffer vertices) {
+            this.byteOffsets.add(byteOffset);
+            this.byteLengths.add(vertices.remaining());
+            this.vertices.put(vertices.duplicate());
+        }
+
+        Splice build() {
+            return new Splice(this.ranges, this.vertices.flip(), this.byteOffsets.toIntArray(), this.byteLengths.toIntArray());
+        }
+    }
+
+    private static final class RangesBuilder {
+
+        private final IntList sections = new IntArrayList();
+        private final IntList firstVertices = new IntArrayList();
+        private final IntList vertexCounts = new IntArrayList();
+        private int vertexCount = 0;
+
+        void add(int section, int vertexCount) {
+            this.sections.add(section);
+            this.firstVertices.add(this.vertexCount);
+            this.vertexCounts.add(vertexCount);
+            this.vertexCount += vertexCount;
+        }
+
+        SectionRanges build() {
+            return new SectionRanges(this.sections.toIntArray(), this.firstVertices.toIntArray(), this.vertexCounts.toIntArray());
+        }
+    }
+
+    /**
+     * The translucent vertex buffer of a level and the quad centers it was sorted with, which
+     * are all that is needed to write a new index buffer for it from another view position
+     */
+    record TranslucentSorting(VertexBuffer buffer, BufferBuilder.TransparentSortingData sortingData) {}
+}
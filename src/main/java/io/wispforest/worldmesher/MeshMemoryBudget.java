@@ -0,0 +1,193 @@
+package io.wispforest.worldmesher;
+
+import com.google.common.collect.ImmutableMap;
+import com.mojang.blaze3d.systems.RenderSystem;
+import net.minecraft.client.render.RenderLayer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Accounts the bytes every {@link WorldMesh} uploaded into its vertex buffers, per layer,
+ * and keeps their total under a budget. Whenever the budget is exceeded, the meshes which
+ * were rendered least recently are evicted - their vertex buffers are released while their
+ * section geometry is kept, and the next time they are rendered they merge and upload it
+ * again without tessellating anything
+ * <p>
+ * Meshes are only evicted once they were not rendered for a while, so that meshes which
+ * are all on screen at the same time never evict each other. Meshes which could only
+ * come back by tessellating their entire volume again are never evicted
+ */
+public final class MeshMemoryBudget {
+
+    private static final MeshMemoryBudget SHARED = new MeshMemoryBudget(Long.MAX_VALUE, 10_000_000_000L);
+
+    private volatile long maxBytes;
+    private final long minIdleNanos;
+    private final LongSupplier clock;
+
+    // tracked meshes, least recently rendered first
+    private final LinkedHashMap<WorldMesh, Entry> meshes = new LinkedHashMap<>();
+    private long usedBytes = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maxBytes     How many bytes all tracked meshes together may keep uploaded
+     * @param minIdleNanos How long a mesh has to go without being rendered before it may be evicted, in nanoseconds
+     * @param clock        The time source idle times are measured with
+     */
+    public MeshMemoryBudget(long maxBytes, long minIdleNanos, LongSupplier clock) {
+        this.maxBytes = maxBytes;
+        this.minIdleNanos = minIdleNanos;
+        this.clock = clock;
+    }
+
+    public MeshMemoryBudget(long maxBytes, long minIdleNanos) {
+        this(maxBytes, minIdleNanos, System::nanoTime);
+    }
+
+    /**
+     * @return The budget used by all meshes which were not given their own. It starts out
+     * unlimited - set one through {@link #setMaxBytes(long)} to have idle meshes evicted,
+     * which they may be once they were not rendered for 10 seconds
+     */
+    public static MeshMemoryBudget shared() {
+        return SHARED;
+    }
+
+    /**
+     * Replace the budget, which takes effect the next time
+     * it is {@linkplain #enforce() enforced}
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public long maxBytes() {
+        return this.maxBytes;
+    }
+
+    public long minIdleNanos() {
+        return this.minIdleNanos;
+    }
+
+    /**
+     * @return How many bytes all tracked meshes together currently keep uploaded
+     */
+    public synchronized long usedBytes() {
+        return this.usedBytes;
+    }
+
+    /**
+     * @return How many bytes the given mesh currently keeps uploaded,
+     * {@code 0} if it is not tracked by this budget
+     */
+    public synchronized long usedBytes(WorldMesh mesh) {
+        var entry = this.meshes.get(mesh);
+        return entry != null ? entry.bytes : 0;
+    }
+
+    /**
+     * @return How many bytes the given mesh currently keeps uploaded for each of its layers,
+     * summed across its levels of detail
+     */
+    public synchronized Map<RenderLayer, Long> layerBytes(WorldMesh mesh) {
+        var entry = this.meshes.get(mesh);
+        return entry != null ? entry.layerBytes : Map.of();
+    }
+
+    /**
+     * @return How many meshes currently keep anything uploaded
+     */
+    public synchronized int trackedMeshes() {
+        return this.meshes.size();
+    }
+
+    /**
+     * @return How many meshes were evicted so far
+     */
+    public synchronized long evictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Evict the least recently rendered meshes which are idle for long enough
+     * until all tracked meshes fit the budget again, or no mesh is left that could
+     * be evicted. Runs after every build any tracked mesh commits, and must be called
+     * on the render thread
+     */
+    public void enforce() {
+        RenderSystem.assertOnRenderThread();
+
+        // evicting takes the lock of each mesh, which must never be
+        // acquired while holding this one - so pick the candidates first
+        var candidates = new ArrayList<WorldMesh>();
+        synchronized (this) {
+            if (this.usedBytes <= this.maxBytes) return;
+
+            long now = this.clock.getAsLong();
+            for (var entry : this.meshes.entrySet()) {
+                if (now - entry.getValue().lastRenderedNanos >= this.minIdleNanos) candidates.add(entry.getKey());
+            }
+        }
+
+        for (var mesh : candidates) {
+            synchronized (this) {
+                if (this.usedBytes <= this.maxBytes) return;
+            }
+
+            if (mesh.evict()) {
+                synchronized (this) {
+                    this.evictions++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace what the given mesh keeps uploaded, which counts as rendering it
+     */
+    synchronized void track(WorldMesh mesh, Map<RenderLayer, Long> layerBytes) {
+        this.untrack(mesh);
+
+        var entry = new Entry(ImmutableMap.copyOf(layerBytes), layerBytes.values().stream().mapToLong(Long::longValue).sum());
+        entry.lastRenderedNanos = this.clock.getAsLong();
+
+        this.meshes.put(mesh, entry);
+        this.usedBytes += entry.bytes;
+    }
+
+    /**
+     * Stop accounting the given mesh, after it released all of its vertex buffers
+     */
+    synchronized void untrack(WorldMesh mesh) {
+        var entry = this.meshes.remove(mesh);
+        if (entry != null) this.usedBytes -= entry.bytes;
+    }
+
+    /**
+     * Mark the given mesh as just rendered, which moves it to
+     * the back of the eviction order
+     */
+    synchronized void touch(WorldMesh mesh) {
+        var entry = this.meshes.remove(mesh);
+        if (entry == null) return;
+
+        entry.lastRenderedNanos = this.clock.getAsLong();
+        this.meshes.put(mesh, entry);
+    }
+
+    private static final class Entry {
+
+        private final Map<RenderLayer, Long> layerBytes;
+        private final long bytes;
+        private long lastRenderedNanos;
+
+        private Entry(Map<RenderLayer, Long> layerBytes, long bytes) {
+            this.layerBytes = layerBytes;
+            this.bytes = bytes;
+        }
+    }
+}
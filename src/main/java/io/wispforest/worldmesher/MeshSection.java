@@ -0,0 +1,58 @@
+package io.wispforest.worldmesher;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One world-aligned 16³ chunk section of a mesh's volume,
+ * clipped to the bounds of that volume
+ *
+ * @param pos The packed {@link ChunkSectionPos} of this section
+ * @param min The lowest block position of this section inside the mesh
+ * @param max The highest block position of this section inside the mesh
+ */
+record MeshSection(long pos, BlockPos min, BlockPos max) {
+
+    /**
+     * Split the given volume into sections, ordered the same way {@link BlockPos#iterate(BlockPos, BlockPos)}
+     * walks blocks - x first, then y, then z. Merging section geometry in this order keeps
+     * the final vertex data independent of which section finished tessellating first
+     */
+    static List<MeshSection> collect(BlockPos origin, BlockPos end) {
+        var sections = new ArrayList<MeshSection>();
+
+        for (int sectionZ = ChunkSectionPos.getSectionCoord(origin.getZ()); sectionZ <= ChunkSectionPos.getSectionCoord(end.getZ()); sectionZ++) {
+            for (int sectionY = ChunkSectionPos.getSectionCoord(origin.getY()); sectionY <= ChunkSectionPos.getSectionCoord(end.getY()); sectionY++) {
+                for (int sectionX = ChunkSectionPos.getSectionCoord(origin.getX()); sectionX <= ChunkSectionPos.getSectionCoord(end.getX()); sectionX++) {
+                    sections.add(new MeshSection(
+                            ChunkSectionPos.asLong(sectionX, sectionY, sectionZ),
+                            new BlockPos(
+                                    Math.max(ChunkSectionPos.getBlockCoord(sectionX), origin.getX()),
+                                    Math.max(ChunkSectionPos.getBlockCoord(sectionY), origin.getY()),
+                                    Math.max(ChunkSectionPos.getBlockCoord(sectionZ), origin.getZ())
+                            ),
+                            new BlockPos(
+                                    Math.min(ChunkSectionPos.getBlockCoord(sectionX) + 15, end.getX()),
+                                    Math.min(ChunkSectionPos.getBlockCoord(sectionY) + 15, end.getY()),
+                                    Math.min(ChunkSectionPos.getBlockCoord(sectionZ) + 15, end.getZ())
+                            )
+                    ));
+                }
+            }
+        }
+
+        return sections;
+    }
+
+    /**
+     * @return The amount of blocks inside this section
+     */
+    int blockCount() {
+        return (this.max.getX() - this.min.getX() + 1)
+                * (this.max.getY() - this.min.getY() + 1)
+                * (this.max.getZ() - this.min.getZ() + 1);
+    }
+}
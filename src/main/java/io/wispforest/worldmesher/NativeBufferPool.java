@@ -0,0 +1,155 @@
+package io.wispforest.worldmesher;
+
+import net.minecraft.client.render.BufferBuilder;
+import net.minecraft.util.math.MathHelper;
+
+import java.util.ArrayDeque;
+
+/**
+ * A pool of {@link BufferBuilder}s, sorted into power-of-two size classes by the
+ * capacity of their native buffer. Builders are handed back after their contents
+ * are uploaded and reused by later builds, instead of allocating, growing and
+ * freeing a fresh native buffer every time
+ * <p>
+ * The pool only ever retains up to {@link #maxRetainedBytes()} of native memory,
+ * any builder released beyond that is freed immediately
+ */
+public final class NativeBufferPool {
+
+    private static final int MIN_CLASS = 16; // 64 KiB
+    private static final int MAX_CLASS = 28; // 256 MiB
+
+    /**
+     * How far above the requested size class a pooled builder may
+     * be before a new one is allocated instead of handing it out
+     */
+    private static final int MAX_CLASS_OVERSHOOT = 2;
+
+    /**
+     * {@link BufferBuilder#BufferBuilder(int)} allocates this many bytes per unit of capacity
+     */
+    private static final int BYTES_PER_CAPACITY_UNIT = 6;
+
+    private static final NativeBufferPool SHARED = new NativeBufferPool(64L * 1024 * 1024);
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<BufferBuilder>[] classes = new ArrayDeque[MAX_CLASS + 1];
+
+    private long maxRetainedBytes;
+    private long retainedBytes = 0;
+    private int retainedBuilders = 0;
+
+    public NativeBufferPool(long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+        for (int sizeClass = MIN_CLASS; sizeClass <= MAX_CLASS; sizeClass++) {
+            this.classes[sizeClass] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * @return The pool used by all meshes which were not given their own
+     */
+    public static NativeBufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Take a builder able to hold at least the given amount of bytes without
+     * growing from this pool, or allocate a new one if none is available.
+     * The returned builder is not building yet
+     */
+    public BufferBuilder acquire(int bytes) {
+        int requestedClass = sizeClassFor(bytes);
+
+        synchronized (this) {
+            for (int sizeClass = requestedClass; sizeClass <= Math.min(requestedClass + MAX_CLASS_OVERSHOOT, MAX_CLASS); sizeClass++) {
+                var builder = this.classes[sizeClass].pollLast();
+                if (builder == null) continue;
+
+                this.retainedBytes -= BufferBuilders.capacity(builder);
+                this.retainedBuilders--;
+                return builder;
+            }
+        }
+
+        return new BufferBuilder((1 << requestedClass) / BYTES_PER_CAPACITY_UNIT + 1);
+    }
+
+    /**
+     * Hand the given builder back to this pool. Its contents must either have been
+     * uploaded or be discarded, and it must not be used by the caller anymore
+     */
+    public void release(BufferBuilder builder) {
+        if (builder.isBuilding()) builder.end().release();
+
+        int capacity = BufferBuilders.capacity(builder);
+        int sizeClass = 31 - Integer.numberOfLeadingZeros(capacity);
+
+        synchronized (this) {
+            if (sizeClass >= MIN_CLASS && sizeClass <= MAX_CLASS && this.retainedBytes + capacity <= this.maxRetainedBytes) {
+                this.classes[sizeClass].addLast(builder);
+                this.retainedBytes += capacity;
+                this.retainedBuilders++;
+                return;
+            }
+        }
+
+        BufferBuilders.free(builder);
+    }
+
+    /**
+     * @return How many bytes of native memory the builders currently held by this pool occupy
+     */
+    public synchronized long retainedBytes() {
+        return this.retainedBytes;
+    }
+
+    /**
+     * @return How many builders this pool currently holds
+     */
+    public synchronized int retainedBuilders() {
+        return this.retainedBuilders;
+    }
+
+    public synchronized long maxRetainedBytes() {
+        return this.maxRetainedBytes;
+    }
+
+    /**
+     * Change how much native memory this pool may retain, immediately
+     * freeing the largest builders until it is below the new limit
+     */
+    public synchronized void setMaxRetainedBytes(long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+
+        for (int sizeClass = MAX_CLASS; sizeClass >= MIN_CLASS && this.retainedBytes > this.maxRetainedBytes; sizeClass--) {
+            var builders = this.classes[sizeClass];
+            while (!builders.isEmpty() && this.retainedBytes > this.maxRetainedBytes) {
+                this.freeRetained(builders.pollLast());
+            }
+        }
+    }
+
+    /**
+     * Free every builder currently held by this pool
+     */
+    public synchronized void clear() {
+        for (int sizeClass = MIN_CLASS; sizeClass <= MAX_CLASS; sizeClass++) {
+            var builders = this.classes[sizeClass];
+            while (!builders.isEmpty()) {
+                this.freeRetained(builders.pollLast());
+            }
+        }
+    }
+
+    private void freeRetained(BufferBuilder builder) {
+        this.retainedBytes -= BufferBuilders.capacity(builder);
+        this.retainedBuilders--;
+        BufferBuilders.free(builder);
+    }
+
+    private static int sizeClassFor(int bytes) {
+        int sizeClass = 32 - Integer.numberOfLeadingZeros(Math.max(bytes, 1) - 1);
+        return MathHelper.clamp(sizeClass, MIN_CLASS, MAX_CLASS);
+    }
+}
@@ -0,0 +1,169 @@
+package io.wispforest.worldmesher;
+
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.client.render.BufferBuilder;
+import net.minecraft.client.render.RenderLayer;
+import net.minecraft.util.math.BlockPos;
+import org.jetbrains.annotations.Nullable;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The tessellated vertex data of a single {@link MeshSection}, kept in natively
+ * allocated buffers until it is merged into the per-layer vertex buffers of a mesh
+ */
+final class SectionGeometry implements AutoCloseable {
+
+    final MeshSection section;
+    final Map<BlockPos, BlockEntity> blockEntities = new HashMap<>();
+
+    int blocksVisited = 0;
+    int nonAirBlocks = 0;
+    int lightCacheHits = 0;
+    int lightCacheMisses = 0;
+
+    private final Map<RenderLayer, LayerData> layers = new LinkedHashMap<>();
+    private @Nullable Map<RenderLayer, CompressedLayer> compressedLayers = null;
+
+    SectionGeometry(MeshSection section) {
+        this.section = section;
+    }
+
+    /**
+     * Copy the vertex data of the given built buffer into this geometry. The
+     * built buffer is not released, this is the responsibility of the caller
+     */
+    void put(RenderLayer layer, BufferBuilder.BuiltBuffer builtBuffer) {
+        this.put(layer, builtBuffer.getVertexBuffer(), builtBuffer.getParameters().vertexCount());
+    }
+
+    /**
+     * Copy the given encoded vertices into this geometry
+     */
+    void put(RenderLayer layer, ByteBuffer source, int vertexCount) {
+        if (vertexCount == 0) return;
+
+        var vertices = MemoryUtil.memAlloc(source.remaining());
+        MemoryUtil.memCopy(source, vertices);
+
+        var discarded = this.layers.put(layer, new LayerData(vertices, vertexCount));
+        if (discarded != null) MemoryUtil.memFree(discarded.vertices);
+    }
+
+    /**
+     * Take ownership of the given natively allocated vertices, which
+     * are freed through {@link MemoryUtil#memFree(java.nio.Buffer)} once this geometry is closed
+     */
+    void adopt(RenderLayer layer, ByteBuffer vertices, int vertexCount) {
+        if (vertexCount == 0) {
+            MemoryUtil.memFree(vertices);
+            return;
+        }
+
+        var discarded = this.layers.put(layer, new LayerData(vertices, vertexCount));
+        if (discarded != null) MemoryUtil.memFree(discarded.vertices);
+    }
+
+    Map<RenderLayer, LayerData> layers() {
+        return this.layers;
+    }
+
+    /**
+     * @return The amount of native memory held by this geometry, in bytes
+     */
+    long byteSize() {
+        long size = 0;
+        for (var layerData : this.layers.values()) {
+            size += layerData.vertices.capacity();
+        }
+        return size;
+    }
+
+    boolean isEmpty() {
+        return this.layers.isEmpty() && this.compressedLayers == null;
+    }
+
+    /**
+     * Deflate the vertex data of every layer onto the heap and free its native memory.
+     * Until this geometry is {@linkplain #inflate() inflated} again, it has no layers
+     */
+    void compress() {
+        if (this.compressedLayers != null || this.layers.isEmpty()) return;
+
+        var compressed = new LinkedHashMap<RenderLayer, CompressedLayer>();
+        var deflater = new Deflater(Deflater.BEST_SPEED);
+        var chunk = new byte[8192];
+
+        try {
+            this.layers.forEach((layer, layerData) -> {
+                deflater.reset();
+                deflater.setInput(layerData.vertices.duplicate());
+                deflater.finish();
+
+                var output = new ByteArrayOutputStream(layerData.vertices.remaining() / 4);
+                while (!deflater.finished()) {
+                    output.write(chunk, 0, deflater.deflate(chunk));
+                }
+
+                compressed.put(layer, new CompressedLayer(output.toByteArray(), layerData.vertices.remaining(), layerData.vertexCount));
+            });
+        } finally {
+            deflater.end();
+        }
+
+        this.close();
+        this.compressedLayers = compressed;
+    }
+
+    /**
+     * Restore the layers of a {@linkplain #compress() compressed} geometry into native memory
+     */
+    void inflate() {
+        if (this.compressedLayers == null) return;
+
+        var inflater = new Inflater();
+        try {
+            for (var entry : this.compressedLayers.entrySet()) {
+                var compressed = entry.getValue();
+
+                inflater.reset();
+                inflater.setInput(compressed.data);
+
+                var vertices = MemoryUtil.memAlloc(compressed.byteSize);
+                try {
+                    while (vertices.hasRemaining() && !inflater.finished()) {
+                        inflater.inflate(vertices);
+                    }
+                } catch (DataFormatException e) {
+                    MemoryUtil.memFree(vertices);
+                    throw new IllegalStateException("Compressed section geometry is corrupt", e);
+                }
+
+                this.layers.put(entry.getKey(), new LayerData(vertices.flip(), compressed.vertexCount));
+            }
+        } finally {
+            inflater.end();
+        }
+
+        this.compressedLayers = null;
+    }
+
+    @Override
+    public void close() {
+        this.layers.values().forEach(layerData -> MemoryUtil.memFree(layerData.vertices));
+        this.layers.clear();
+        this.compressedLayers = null;
+    }
+
+    record LayerData(ByteBuffer vertices, int vertexCount) {}
+
+    private record CompressedLayer(byte[] data, int byteSize, int vertexCount) {}
+}
@@ -0,0 +1,157 @@
+package io.wispforest.worldmesher;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import net.minecraft.client.render.VertexFormat;
+import org.jetbrains.annotations.ApiStatus;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.opengl.GL14;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Where the geometry of each section lies inside the merged vertex buffer of a single
+ * layer. Sections are merged one after the other, so the quads of every section occupy
+ * one contiguous range of the buffer and a draw can be limited to the visible ones
+ */
+public final class SectionRanges {
+
+    // the ranges of the draw currently limited through this class, only touched on the
+    // render thread. VertexBufferMixin issues them instead of drawing the entire buffer
+    private static IntBuffer drawFirstIndices = MemoryUtil.memAllocInt(64);
+    private static IntBuffer drawIndexCounts = MemoryUtil.memAllocInt(64);
+    private static PointerBuffer drawOffsets = MemoryUtil.memAllocPointer(64);
+    private static int drawRanges = -1;
+
+    private final int[] sections;
+    private final int[] firstVertices;
+    private final int[] vertexCounts;
+
+    /**
+     * @param sections      The index of each section with geometry in this layer, in ascending order
+     * @param firstVertices The first vertex of each of those sections in the buffer
+     * @param vertexCounts  How many vertices each of those sections has
+     */
+    SectionRanges(int[] sections, int[] firstVertices, int[] vertexCounts) {
+        this.sections = sections;
+        this.firstVertices = firstVertices;
+        this.vertexCounts = vertexCounts;
+    }
+
+    /**
+     * @return The first vertex of the given section in the buffer,
+     * or {@code -1} if it has no geometry in this layer
+     */
+    int firstVertex(int section) {
+        int index = Arrays.binarySearch(this.sections, section);
+        return index >= 0 ? this.firstVertices[index] : -1;
+    }
+
+    /**
+     * @return How many vertices of the given section are in the
+     * buffer, {@code 0} if it has no geometry in this layer
+     */
+    int vertexCount(int section) {
+        int index = Arrays.binarySearch(this.sections, section);
+        return index >= 0 ? this.vertexCounts[index] : 0;
+    }
+
+    /**
+     * @return Whether any of the sections with geometry in this layer is visible
+     */
+    boolean anyVisible(BitSet visibleSections) {
+        for (int section : this.sections) {
+            if (visibleSections.get(section)) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Run the given draw of this layer's buffer, limited to the visible sections. Adjacent
+     * visible sections are joined into a single range, and if all of them are visible
+     * the draw is not limited at all
+     *
+     * @return {@code false} if no section was visible, in which case nothing was drawn
+     */
+    boolean drawVisible(BitSet visibleSections, VertexFormat.DrawMode drawMode, Runnable draw) {
+        RenderSystem.assertOnRenderThread();
+
+        if (drawFirstIndices.capacity() < this.sections.length) {
+            int capacity = Math.max(this.sections.length, drawFirstIndices.capacity() * 2);
+            drawFirstIndices = MemoryUtil.memRealloc(drawFirstIndices, capacity);
+            drawIndexCounts = MemoryUtil.memRealloc(drawIndexCounts, capacity);
+            drawOffsets = MemoryUtil.memRealloc(drawOffsets, capacity);
+        }
+
+        int ranges = 0, visible = 0;
+        int rangeStart = -1, rangeEnd = -1;
+        for (int i = 0; i < this.sections.length; i++) {
+            if (!visibleSections.get(this.sections[i])) continue;
+            visible++;
+
+            int first = this.firstVertices[i], end = first + this.vertexCounts[i];
+            if (first == rangeEnd) {
+                rangeEnd = end;
+                continue;
+            }
+
+            if (rangeStart >= 0) this.putRange(ranges++, drawMode, rangeStart, rangeEnd);
+            rangeStart = first;
+            rangeEnd = end;
+        }
+
+        if (rangeStart >= 0) this.putRange(ranges++, drawMode, rangeStart, rangeEnd);
+
+        if (ranges == 0) return false;
+        if (visible == this.sections.length) {
+            draw.run();
+            return true;
+        }
+
+        drawRanges = ranges;
+        try {
+            draw.run();
+        } finally {
+            drawRanges = -1;
+        }
+
+        return true;
+    }
+
+    private void putRange(int range, VertexFormat.DrawMode drawMode, int firstVertex, int endVertex) {
+        drawFirstIndices.put(range, drawMode.getIndexCount(firstVertex));
+        drawIndexCounts.put(range, drawMode.getIndexCount(endVertex) - drawMode.getIndexCount(firstVertex));
+    }
+
+    /**
+     * @return Whether the vertex buffer currently being drawn
+     * must only draw the ranges set up by {@link #drawVisible(BitSet, VertexFormat.DrawMode, Runnable)}
+     */
+    @ApiStatus.Internal
+    public static boolean limitingDraw() {
+        return drawRanges >= 0;
+    }
+
+    /**
+     * Draw the ranges of the currently limited draw from the bound index buffer
+     */
+    @ApiStatus.Internal
+    public static void drawLimited(int glMode, VertexFormat.IndexType indexType) {
+        for (int range = 0; range < drawRanges; range++) {
+            drawOffsets.put(range, (long) drawFirstIndices.get(range) * indexType.size);
+        }
+
+        GL14.glMultiDrawElements(
+                glMode,
+                drawIndexCounts.limit(drawRanges),
+                indexType.glType,
+                drawOffsets.limit(drawRanges)
+        );
+
+        drawIndexCounts.clear();
+        drawOffsets.clear();
+    }
+}
@@ -0,0 +1,354 @@
+package io.wispforest.worldmesher;
+
+import io.wispforest.worldmesher.renderers.WorldMesherBlockModelRenderer;
+import io.wispforest.worldmesher.renderers.WorldMesherFluidRenderer;
+import io.wispforest.worldmesher.renderers.WorldMesherRenderLayers;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import net.fabricmc.fabric.api.renderer.v1.RendererAccess;
+import net.fabricmc.fabric.impl.client.indigo.renderer.IndigoRenderer;
+import net.fabricmc.fabric.impl.client.indigo.renderer.render.WorldMesherRenderContext;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.block.BlockRenderType;
+import net.minecraft.block.BlockState;
+import net.minecraft.client.render.*;
+import net.minecraft.client.util.math.MatrixStack;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.util.math.random.Random;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tessellates the blocks and fluids of {@link MeshSection}s. Every tessellator owns its
+ * renderers, builders and scratch state, so any number of them can run in parallel -
+ * and once warmed up, tessellating another block allocates nothing
+ */
+class SectionTessellator implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SectionTessellator.class);
+    private static volatile boolean renderContextFailed = false;
+
+    /**
+     * The builder size used for layers there is no hint for, enough
+     * for a section which shows one full face of every block on its boundary
+     */
+    static final int DEFAULT_LAYER_BYTES = 6 * 16 * 16 * 4 * VertexFormats.POSITION_COLOR_TEXTURE_LIGHT_NORMAL.getVertexSizeByte();
+
+    private final WorldSnapshot world;
+    private final BlockPos origin;
+    private final BlockPos end;
+
+    private final boolean cull;
+    private final boolean alwaysDrawVolumeEdges;
+    private final boolean compactVertices;
+
+    private final TessellationResources resources;
+    private final NativeBufferPool bufferPool;
+    private final Object2IntMap<RenderLayer> layerSizeHints;
+    private final WorldMesherBlockModelRenderer blockRenderer;
+    private final WorldMesherFluidRenderer fluidRenderer;
+    private final @Nullable WorldMesherRenderContext renderContext;
+    private final @Nullable GreedyMesher greedyMesher;
+    private final @Nullable FaceVisibility faceVisibility;
+    private final LightCache lightCache;
+    private @Nullable LodMesher lodMesher = null;
+
+    private final MatrixStack matrices = new MatrixStack();
+    private final Map<RenderLayer, BufferBuilder> builderStorage = new HashMap<>();
+    private final Random random = Random.createLocal();
+
+    /**
+     * @param layerSizeHints How many bytes a single section is expected to emit into each layer,
+     *                       used to take builders of the right size from the buffer pool
+     */
+    SectionTessellator(TessellationResources resources, NativeBufferPool bufferPool, Object2IntMap<RenderLayer> layerSizeHints, WorldSnapshot world, BlockPos origin, BlockPos end, boolean cull, boolean useGlobalNeighbors, boolean greedyMeshing, boolean compactVertices) {
+        this.resources = resources;
+        this.bufferPool = bufferPool;
+        this.layerSizeHints = layerSizeHints;
+        this.blockRenderer = new WorldMesherBlockModelRenderer(resources.blockColors());
+        this.fluidRenderer = resources.fluidRenderers().get();
+
+        this.lightCache = new LightCache(world);
+        this.blockRenderer.setLightCache(this.lightCache);
+
+        this.world = world;
+        this.origin = origin;
+        this.end = end;
+
+        this.cull = cull;
+        this.alwaysDrawVolumeEdges = !useGlobalNeighbors;
+
+        // compact vertices can only be drawn with the compact
+        // shaders, if those failed to load they are not encoded
+        this.compactVertices = compactVertices && WorldMesherRenderLayers.compactProgramsLoaded() && CompactVertices.fits(origin, end);
+
+        this.renderContext = resources.useRenderContext() ? this.createRenderContext() : null;
+
+        // merged faces can only be drawn with the greedy shader, if
+        // that failed to load every face is emitted on its own
+        this.greedyMesher = greedyMeshing && WorldMesherRenderLayers.greedyProgram() != null
+                ? new GreedyMesher(origin)
+                : null;
+
+        this.faceVisibility = cull
+                ? new FaceVisibility(resources, world, origin, end, this.alwaysDrawVolumeEdges)
+                : null;
+    }
+
+    private @Nullable WorldMesherRenderContext createRenderContext() {
+        if (renderContextFailed) return null;
+
+        try {
+            //noinspection UnstableApiUsage
+            return RendererAccess.INSTANCE.getRenderer() instanceof IndigoRenderer
+                    ? new WorldMesherRenderContext(this.world, this::getOrCreateBuilder, this.lightCache)
+                    : null;
+        } catch (Throwable throwable) {
+            // only report this once, every section of every mesh would run into it again
+            if (renderContextFailed) return null;
+            renderContextFailed = true;
+
+            var fabricApiVersion = FabricLoader.getInstance().getModContainer("worldmesher").get().getMetadata().getCustomValue("worldmesher:fabric_api_build_version").getAsString();
+            LOGGER.error(
+                    "Could not create a context for rendering Fabric API models. This is most likely due to an incompatible Fabric API version - this build of WorldMesher was compiled against '{}', try that instead",
+                    fabricApiVersion,
+                    throwable
+            );
+
+            return null;
+        }
+    }
+
+    /**
+     * Tessellate every block inside the given section. The returned geometry
+     * owns copies of the vertex data, so the builders of this tessellator
+     * are immediately reused for the next section
+     */
+    SectionGeometry tessellate(MeshSection section) {
+        var geometry = new SectionGeometry(section);
+
+        var uniformState = this.world.uniformState(section.pos());
+        if (uniformState != null && uniformState.isAir()) return geometry;
+
+        if (this.greedyMesher != null) this.greedyMesher.beginSection(section);
+        this.lightCache.prepare(section);
+
+        try {
+            if (uniformState != null && this.hidesInterior(uniformState, section)) {
+                if (this.faceVisibility != null) this.faceVisibility.clear();
+                this.tessellateShell(section, geometry);
+            } else {
+                if (this.faceVisibility != null) this.faceVisibility.compute(section);
+                for (var pos : BlockPos.iterate(section.min(), section.max())) {
+                    this.tessellateBlock(pos, geometry);
+                }
+            }
+
+            if (this.greedyMesher != null) this.greedyMesher.flush(geometry);
+            this.finishBuilders(geometry);
+        } catch (Throwable throwable) {
+            geometry.close();
+
+            if (this.greedyMesher != null) this.greedyMesher.reset();
+            this.discardBuilders();
+
+            throw throwable;
+        } finally {
+            this.lightCache.drainStats(geometry);
+            this.lightCache.clear();
+        }
+
+        return geometry;
+    }
+
+    /**
+     * Tessellate the given section at the level of detail whose
+     * cells have the given edge length, see {@link LodMesher}
+     */
+    SectionGeometry tessellateLod(MeshSection section, int factor) {
+        var geometry = new SectionGeometry(section);
+
+        var uniformState = this.world.uniformState(section.pos());
+        if (uniformState != null && uniformState.isAir()) return geometry;
+
+        if (this.lodMesher == null) {
+            this.lodMesher = new LodMesher(this.resources, this.world, this.origin, this.end, this.alwaysDrawVolumeEdges);
+        }
+
+        try {
+            this.lodMesher.tessellate(section, factor, this::getOrCreateBuilder);
+            this.finishBuilders(geometry);
+        } catch (Throwable throwable) {
+            geometry.close();
+            this.discardBuilders();
+
+            throw throwable;
+        }
+
+        return geometry;
+    }
+
+    private void finishBuilders(SectionGeometry geometry) {
+        this.builderStorage.forEach((layer, builder) -> {
+            if (!builder.isBuilding()) return;
+
+            var builtBuffer = builder.end();
+
+            var compactLayer = this.compactVertices ? WorldMesherRenderLayers.compact(layer) : null;
+            if (compactLayer != null) {
+                int vertexCount = builtBuffer.getParameters().vertexCount();
+                geometry.adopt(compactLayer, CompactVertices.encode(builtBuffer.getVertexBuffer(), vertexCount, this.origin, geometry.section), vertexCount);
+            } else {
+                geometry.put(layer, builtBuffer);
+            }
+
+            builtBuffer.release();
+        });
+    }
+
+    /**
+     * Leave the builders in a state the next section can start from
+     */
+    private void discardBuilders() {
+        this.builderStorage.values().forEach(builder -> {
+            if (builder.isBuilding()) builder.end().release();
+        });
+    }
+
+    /**
+     * Whether a section filled entirely with the given state can only ever
+     * show the faces on its boundary, see {@link FaceVisibility#hiddenWhenEnclosed(BlockState, BlockPos)}
+     */
+    private boolean hidesInterior(BlockState state, MeshSection section) {
+        return this.faceVisibility != null && this.faceVisibility.hiddenWhenEnclosed(state, section.min());
+    }
+
+    /**
+     * Tessellate only the outermost layer of blocks in the given section, visiting
+     * them in the same order a full iteration would so that the output is identical
+     */
+    private void tessellateShell(MeshSection section, SectionGeometry geometry) {
+        var min = section.min();
+        var max = section.max();
+        var pos = new BlockPos.Mutable();
+
+        for (int z = min.getZ(); z <= max.getZ(); z++) {
+            for (int y = min.getY(); y <= max.getY(); y++) {
+                boolean fullRow = z == min.getZ() || z == max.getZ() || y == min.getY() || y == max.getY();
+                int step = fullRow ? 1 : Math.max(max.getX() - min.getX(), 1);
+
+                for (int x = min.getX(); x <= max.getX(); x += step) {
+                    this.tessellateBlock(pos.set(x, y, z), geometry);
+                }
+            }
+        }
+    }
+
+    private void tessellateBlock(BlockPos pos, SectionGeometry geometry) {
+        geometry.blocksVisited++;
+
+        var state = world.getBlockState(pos);
+        if (state.isAir()) return;
+
+        geometry.nonAirBlocks++;
+
+        int visibleFaces = this.faceVisibility != null ? this.faceVisibility.visibleFaces(pos) : WorldMesherBlockModelRenderer.UNKNOWN_FACES;
+        if (visibleFaces == 0 && this.faceVisibility != null && this.faceVisibility.hiddenWhenEnclosed(state, pos)) return;
+
+        int renderX = pos.getX() - this.origin.getX();
+        int renderY = pos.getY() - this.origin.getY();
+        int renderZ = pos.getZ() - this.origin.getZ();
+
+        var blockEntity = world.getBlockEntity(pos);
+        if (blockEntity != null) {
+            geometry.blockEntities.put(new BlockPos(renderX, renderY, renderZ), blockEntity);
+        }
+
+        // instead of pushing a new matrix stack entry for every block, the single
+        // entry is overwritten with the block's translation. neither renderer
+        // applies anything but a translation on top of it
+        var positionMatrix = this.matrices.peek().getPositionMatrix();
+
+        var fluidState = state.getFluidState();
+        if (!fluidState.isEmpty()) {
+            var fluidLayer = RenderLayers.getFluidLayer(fluidState);
+
+            positionMatrix.translation(renderX - (pos.getX() & 15), renderY - (pos.getY() & 15), renderZ - (pos.getZ() & 15));
+
+            fluidRenderer.setMatrix(positionMatrix);
+            fluidRenderer.render(world, pos, this.getOrCreateBuilder(fluidLayer), state, fluidState);
+        }
+
+        positionMatrix.translation(renderX, renderY, renderZ);
+
+        blockRenderer.clearCullingOverrides();
+        blockRenderer.setCullDirection(Direction.EAST, alwaysDrawVolumeEdges && pos.getX() == this.end.getX());
+        blockRenderer.setCullDirection(Direction.WEST, alwaysDrawVolumeEdges && pos.getX() == this.origin.getX());
+        blockRenderer.setCullDirection(Direction.SOUTH, alwaysDrawVolumeEdges && pos.getZ() == this.end.getZ());
+        blockRenderer.setCullDirection(Direction.NORTH, alwaysDrawVolumeEdges && pos.getZ() == this.origin.getZ());
+        blockRenderer.setCullDirection(Direction.UP, alwaysDrawVolumeEdges && pos.getY() == this.end.getY());
+        blockRenderer.setCullDirection(Direction.DOWN, alwaysDrawVolumeEdges && pos.getY() == this.origin.getY());
+
+        blockRenderer.setVisibleFaces(visibleFaces);
+
+        var blockLayer = RenderLayers.getBlockLayer(state);
+
+        final var model = this.resources.models().apply(state);
+        if (renderContext != null && !model.isVanillaAdapter()) {
+            renderContext.tessellateBlock(this.world, state, pos, model, matrices);
+        } else if (state.getRenderType() == BlockRenderType.MODEL) {
+            long seed = state.getRenderingSeed(pos);
+
+            blockRenderer.setFaceSink(this.greedyMesher != null
+                    && blockLayer == RenderLayer.getSolid()
+                    && Vec3d.ZERO.equals(state.getModelOffset(this.world, pos))
+                    && this.greedyMesher.canMerge(model, state, this.random, seed)
+                    ? this.greedyMesher
+                    : null
+            );
+
+            blockRenderer.renderModel(this.world, model, state, pos, matrices, this.getOrCreateBuilder(blockLayer), cull, random, seed, OverlayTexture.DEFAULT_UV, this.resources.ambientOcclusion());
+        }
+    }
+
+    private BufferBuilder getOrCreateBuilder(RenderLayer layer) {
+        var builder = this.builderStorage.get(layer);
+        if (builder == null) {
+            builder = this.bufferPool.acquire(this.sizeHint(layer));
+            this.builderStorage.put(layer, builder);
+        }
+
+        if (!builder.isBuilding()) {
+            builder.begin(VertexFormat.DrawMode.QUADS, VertexFormats.POSITION_COLOR_TEXTURE_LIGHT_NORMAL);
+        }
+
+        return builder;
+    }
+
+    private int sizeHint(RenderLayer layer) {
+        // the hints of compact layers are given in their encoded size
+        var compactLayer = this.compactVertices ? WorldMesherRenderLayers.compact(layer) : null;
+        if (compactLayer != null && this.layerSizeHints.containsKey(compactLayer)) {
+            return this.layerSizeHints.getInt(compactLayer) / CompactVertices.COMPACT_VERTEX_SIZE * CompactVertices.STANDARD_VERTEX_SIZE;
+        }
+
+        return this.layerSizeHints.getOrDefault(layer, DEFAULT_LAYER_BYTES);
+    }
+
+    /**
+     * Hand all builders owned by this tessellator back to
+     * the buffer pool, after which it must not be used anymore
+     */
+    @Override
+    public void close() {
+        this.builderStorage.values().forEach(this.bufferPool::release);
+        this.builderStorage.clear();
+
+        if (this.greedyMesher != null) this.greedyMesher.close();
+    }
+}
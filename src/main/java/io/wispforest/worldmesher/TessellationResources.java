@@ -0,0 +1,35 @@
+package io.wispforest.worldmesher;
+
+import io.wispforest.worldmesher.renderers.WorldMesherFluidRenderer;
+import net.minecraft.block.BlockState;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.color.block.BlockColors;
+import net.minecraft.client.render.model.BakedModel;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Everything a {@link SectionTessellator} needs from the client, captured
+ * once per build instead of being looked up for every section or block
+ *
+ * @param models           The model lookup for block states
+ * @param blockColors      The tint providers for block models
+ * @param fluidRenderers   Creates a fluid renderer for each tessellator
+ * @param ambientOcclusion Whether smooth lighting is enabled
+ * @param useRenderContext Whether non-vanilla Fabric API models should be
+ *                         rendered through a {@code WorldMesherRenderContext}
+ */
+record TessellationResources(Function<BlockState, BakedModel> models, BlockColors blockColors, Supplier<WorldMesherFluidRenderer> fluidRenderers, boolean ambientOcclusion, boolean useRenderContext) {
+
+    static TessellationResources client() {
+        var client = MinecraftClient.getInstance();
+        return new TessellationResources(
+                client.getBlockRenderManager()::getModel,
+                client.getBlockColors(),
+                WorldMesherFluidRenderer::new,
+                MinecraftClient.isAmbientOcclusionEnabled(),
+                true
+        );
+    }
+}
@@ -0,0 +1,57 @@
+package io.wispforest.worldmesher;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Carries the vertex data of finished builds to the GPU. Builds only submit their
+ * uploads and return, the queue then performs them whenever it is drained - which
+ * for the queues used by meshes must happen on the render thread
+ */
+public interface UploadQueue {
+
+    /**
+     * Queue the given uploads as one batch
+     *
+     * @return A future completing on the draining thread right after the last upload of
+     * the batch is performed, or exceptionally if one of them failed - in which case the
+     * remaining uploads of the batch are discarded
+     */
+    CompletableFuture<Void> submit(List<? extends Upload> uploads);
+
+    /**
+     * Perform queued uploads, in the order they were submitted in,
+     * for as long as the budget of this queue allows
+     */
+    void drain();
+
+    /**
+     * @return How many uploads are currently waiting to be performed
+     */
+    int pendingUploads();
+
+    /**
+     * A single unit of work for an upload queue, usually one layer of a mesh
+     */
+    interface Upload {
+
+        /**
+         * @return How many bytes this upload transfers, used for budgeting. Must stay
+         * valid after the upload was performed, so it is best computed up front
+         */
+        long byteSize();
+
+        void upload();
+
+        /**
+         * Release everything still held by this upload once the queue is done
+         * with it, called after every attempt to perform it - successful or not
+         */
+        default void finish() {}
+
+        /**
+         * Release everything held by this upload without performing it
+         */
+        default void discard() {}
+    }
+}
@@ -3,15 +3,14 @@ package io.wispforest.worldmesher;
 import com.google.common.collect.HashMultimap;
 import com.mojang.blaze3d.systems.RenderSystem;
 import com.mojang.blaze3d.systems.VertexSorter;
-import io.wispforest.worldmesher.mixin.BufferBuilderAccessor;
-import io.wispforest.worldmesher.mixin.GlAllocationUtilsAccessor;
-import io.wispforest.worldmesher.renderers.WorldMesherBlockModelRenderer;
-import io.wispforest.worldmesher.renderers.WorldMesherFluidRenderer;
-import net.fabricmc.fabric.api.renderer.v1.RendererAccess;
-import net.fabricmc.fabric.impl.client.indigo.renderer.IndigoRenderer;
-import net.fabricmc.fabric.impl.client.indigo.renderer.render.WorldMesherRenderContext;
-import net.fabricmc.loader.api.FabricLoader;
-import net.minecraft.block.BlockRenderType;
+import io.wispforest.worldmesher.renderers.WorldMesherRenderLayers;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gl.VertexBuffer;
@@ -20,30 +19,53 @@ import net.minecraft.client.util.math.MatrixStack;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.util.Util;
+import net.minecraft.util.math.BlockBox;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Box;
-import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.math.Vec3d;
-import net.minecraft.util.math.random.Random;
 import net.minecraft.world.BlockRenderView;
 import net.minecraft.world.World;
 import org.apache.commons.lang3.function.TriFunction;
 import org.jetbrains.annotations.Nullable;
 import org.joml.Matrix4f;
-import org.lwjgl.system.MemoryUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
 import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 public class WorldMesh {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(WorldMesh.class);
+    private static final float LOD_CELL_PIXELS = 2f;
+
+    // runs right away when already on the render thread, and during the next frame otherwise
+    private static final Executor RENDER_THREAD = runnable -> {
+        if (RenderSystem.isOnRenderThread()) runnable.run();
+        else RenderSystem.recordRenderCall(runnable::run);
+    };
 
     // Render setup data
     private final BlockRenderView world;
@@ -53,38 +75,113 @@ public class WorldMesh {
 
     private final boolean cull;
     private final boolean useGlobalNeighbors;
+    private final boolean greedyMeshing;
+    private final boolean compactVertices;
+    private final boolean progressive;
 
     private final Runnable renderStartAction;
     private final Runnable renderEndAction;
 
     private final TriFunction<PlayerEntity, BlockPos, BlockPos, List<Entity>> entitySupplier;
-    private DynamicRenderInfo renderInfo = DynamicRenderInfo.EMPTY;
+    private volatile DynamicRenderInfo renderInfo = DynamicRenderInfo.EMPTY;
+    private @Nullable CancellationToken refreshToken = null;
+    // builds and refreshes each take a ticket before capturing render info, and
+    // only publish it if no capture which started later published its own yet
+    private final AtomicLong renderInfoTickets = new AtomicLong();
+    private long publishedRenderInfoTicket = 0;
     private boolean entitiesFrozen;
     private boolean freezeEntities;
 
     // Build process data
     private MeshState state = MeshState.NEW;
 
-    private float buildProgress = 0;
-    private @Nullable CompletableFuture<Void> buildFuture = null;
-
-    // Vertex storage
-    private final Map<RenderLayer, VertexBuffer> bufferStorage = new HashMap<>();
+    private final Executor sectionExecutor;
+    private final NativeBufferPool bufferPool;
+    private final UploadQueue uploadQueue;
+    private final MeshMemoryBudget memoryBudget;
+    private final boolean compressEvictedGeometry;
+    private final @Nullable WorldMeshScheduler scheduler;
+    private volatile DoubleSupplier buildPriority;
+    private final @Nullable MeshCache meshCache;
 
-    private WorldMesh(BlockRenderView world, BlockPos origin, BlockPos end, boolean cull, boolean useGlobalNeighbors, boolean freezeEntities, Runnable renderStartAction, Runnable renderEndAction, TriFunction<PlayerEntity, BlockPos, BlockPos, List<Entity>> entitySupplier) {
+    private volatile float buildProgress = 0;
+    private @Nullable CompletableFuture<Void> buildFuture = null;
+    private @Nullable CancellationToken buildToken = null;
+
+    private @Nullable CompletableFuture<Void> followUpFuture = null;
+    private Executor followUpExecutor = Util.getMainWorkerExecutor();
+    private volatile @Nullable BuildStats lastBuildStats = null;
+
+    // Translucency sorting data
+    private final double resortDistance;
+    private volatile @Nullable Vec3d sortViewPos = null;
+    private @Nullable CompletableFuture<Void> resortFuture = null;
+
+    private final List<MeshSection> sections;
+    private final Long2IntMap sectionIndices = new Long2IntOpenHashMap();
+    private final LongSet dirtySections = new LongOpenHashSet();
+
+    // Frustum culling data, the bounds of every section in world coordinates
+    private final Box[] sectionBounds;
+    private final BitSet visibleSections = new BitSet();
+    private final BitSet mergedSections = new BitSet();
+
+    // the content hash of every section as of its last successful build
+    private final Long2LongMap sectionHashes = new Long2LongOpenHashMap();
+    private final AtomicInteger skippedRebuilds = new AtomicInteger();
+
+    // false before the first build and after the mesh was loaded from the cache,
+    // in which case there is no section geometry to do a partial rebuild on top of
+    private volatile boolean sectionGeometryRetained = false;
+    private volatile long builtOptionsKey = 0;
+
+    // whether the memory budget released the vertex buffers of this mesh,
+    // which stays set until a build uploaded all of them again
+    private volatile boolean evicted = false;
+    // whether rendering already asked for a build which restores the evicted
+    // vertex buffers, so that not every frame queues yet another follow-up
+    private volatile boolean restoreRequested = false;
+
+    // Vertex storage, the full-detail level first
+    private final List<MeshLevel> levels;
+
+    private WorldMesh(BlockRenderView world, BlockPos origin, BlockPos end, boolean cull, boolean useGlobalNeighbors, boolean greedyMeshing, boolean compactVertices, int[] levelFactors, boolean freezeEntities, boolean progressive, Executor sectionExecutor, NativeBufferPool bufferPool, UploadQueue uploadQueue, MeshMemoryBudget memoryBudget, boolean compressEvictedGeometry, @Nullable MeshCache meshCache, double resortDistance, @Nullable WorldMeshScheduler scheduler, DoubleSupplier buildPriority, Runnable renderStartAction, Runnable renderEndAction, TriFunction<PlayerEntity, BlockPos, BlockPos, List<Entity>> entitySupplier) {
         this.world = world;
         this.origin = origin;
         this.end = end;
 
         this.cull = cull;
         this.useGlobalNeighbors = useGlobalNeighbors;
+        this.greedyMeshing = greedyMeshing;
+        this.compactVertices = compactVertices && CompactVertices.fits(origin, end);
         this.freezeEntities = freezeEntities;
+        this.progressive = progressive;
         this.dimensions = new Box(this.origin, this.end);
+        this.sections = MeshSection.collect(this.origin, this.end);
+        for (int section = 0; section < this.sections.size(); section++) {
+            this.sectionIndices.put(this.sections.get(section).pos(), section);
+        }
+        // models may reach up to a block outside of their section
+        this.sectionBounds = this.sections.stream().map(section -> new Box(section.min(), section.max().add(1, 1, 1)).expand(1)).toArray(Box[]::new);
+        this.levels = IntStream.concat(IntStream.of(1), Arrays.stream(levelFactors)).mapToObj(MeshLevel::new).toList();
         this.entitySupplier = entitySupplier;
+        this.sectionExecutor = sectionExecutor;
+        this.bufferPool = bufferPool;
+        this.uploadQueue = uploadQueue;
+        this.memoryBudget = memoryBudget;
+        this.compressEvictedGeometry = compressEvictedGeometry;
+        this.meshCache = meshCache;
+        this.resortDistance = resortDistance;
+        this.scheduler = scheduler;
+        this.buildPriority = buildPriority;
 
         this.renderStartAction = renderStartAction;
         this.renderEndAction = renderEndAction;
 
+        if (compactVertices && !this.compactVertices) {
+            LOGGER.warn("World mesh spans more than {} sections along an axis, keeping the standard vertex format", CompactVertices.MAX_SECTIONS_PER_AXIS);
+        }
+
         this.scheduleRebuild();
     }
 
@@ -94,26 +191,142 @@ public class WorldMesh {
      * @param matrices The translation matrices. This is applied to the entire mesh
      */
     public void render(MatrixStack matrices) {
+        this.render(matrices, 0);
+    }
+
+    /**
+     * Renders the given level of detail of this world mesh into the
+     * current framebuffer, translated using the given matrix. Only the
+     * sections inside the view frustum of the current projection are drawn
+     *
+     * @param matrices The translation matrices. This is applied to the entire mesh
+     * @param level    The level of detail to render, {@code 0} being full detail and every level after
+     *                 that corresponding to one of the factors passed to {@link Builder#levelsOfDetail(int...)},
+     *                 in ascending order. Use {@link #levelFor(float)} to pick one from the on-screen size of the mesh
+     */
+    public void render(MatrixStack matrices, int level) {
+        // the mesh is drawn with its origin at 0, 0, 0 of the given matrices
+        var frustum = new Frustum(matrices.peek().getPositionMatrix(), RenderSystem.getProjectionMatrix());
+        frustum.setPosition(this.origin.getX(), this.origin.getY(), this.origin.getZ());
+
+        this.render(matrices, level, frustum);
+    }
+
+    /**
+     * Renders the given level of detail of this world mesh into the current framebuffer,
+     * translated using the given matrix. Only the sections visible in the given frustum
+     * are drawn, layers are skipped entirely if none of their sections are
+     * <p>
+     * If the {@link MeshMemoryBudget} of this mesh evicted it, this draws nothing and
+     * instead schedules a single rebuild which restores its vertex buffers from the retained
+     * geometry, without tessellating anything
+     *
+     * @param matrices The translation matrices. This is applied to the entire mesh
+     * @param level    The level of detail to render, see {@link #render(MatrixStack, int)}
+     * @param frustum  The frustum to test the bounds of each section against,
+     *                 which are given in the world coordinates of the mesh's volume
+     */
+    public void render(MatrixStack matrices, int level, Frustum frustum) {
         if (!this.canRender()) {
             throw new IllegalStateException("World mesh not prepared!");
         }
 
+        this.memoryBudget.touch(this);
+        if (this.state == MeshState.EVICTED) {
+            if (!this.restoreRequested) {
+                this.restoreRequested = true;
+                this.scheduleRebuild();
+            }
+
+            return;
+        }
+
+        this.visibleSections.clear();
+        for (int section = 0; section < this.sectionBounds.length; section++) {
+            if (frustum.isVisible(this.sectionBounds[section])) this.visibleSections.set(section);
+        }
+
+        if (this.visibleSections.isEmpty()) return;
+
         var matrix = matrices.peek().getPositionMatrix();
         var translucent = RenderLayer.getTranslucent();
+        var meshLevel = this.levels.get(level);
 
-        this.bufferStorage.forEach((renderLayer, vertexBuffer) -> {
+        // sections a progressive build already uploaded are drawn from their own
+        // buffers, and left out of the merged ones wherever that is possible
+        this.mergedSections.clear();
+        this.mergedSections.or(this.visibleSections);
+        this.mergedSections.andNot(meshLevel.progressiveSections);
+
+        meshLevel.buffers.forEach((renderLayer, vertexBuffer) -> {
             if (renderLayer == translucent) return;
-            this.drawBuffer(vertexBuffer, renderLayer, matrix);
+            this.drawLayer(meshLevel, vertexBuffer, renderLayer, matrix);
         });
+        this.drawProgressive(meshLevel, false, matrix);
 
-        if (this.bufferStorage.containsKey(translucent)) {
-            this.drawBuffer(bufferStorage.get(translucent), translucent, matrix);
+        if (meshLevel.buffers.containsKey(translucent)) {
+            this.drawLayer(meshLevel, meshLevel.buffers.get(translucent), translucent, matrix);
         }
+        this.drawProgressive(meshLevel, true, matrix);
 
         VertexBuffer.unbind();
     }
 
+    /**
+     * @return How many levels of detail this mesh has, including the full-detail level
+     */
+    public int levelCount() {
+        return this.levels.size();
+    }
+
+    /**
+     * Pick the coarsest level of detail whose cells still
+     * cover no more than about two pixels on screen
+     *
+     * @param pixelsPerBlock How many pixels a single block of this mesh covers on screen
+     * @return The level to pass to {@link #render(MatrixStack, int)}
+     */
+    public int levelFor(float pixelsPerBlock) {
+        for (int level = this.levels.size() - 1; level > 0; level--) {
+            if (this.levels.get(level).factor * pixelsPerBlock <= LOD_CELL_PIXELS) return level;
+        }
+
+        return 0;
+    }
+
+    private void drawLayer(MeshLevel level, VertexBuffer vertexBuffer, RenderLayer renderLayer, Matrix4f matrix) {
+        var ranges = level.ranges.get(renderLayer);
+        if (ranges == null) {
+            this.drawBuffer(vertexBuffer, renderLayer, matrix);
+        } else if (renderLayer == RenderLayer.getTranslucent()) {
+            // sorting interleaves the quads of all sections,
+            // so this layer can only be drawn in full or not at all
+            if (ranges.anyVisible(this.visibleSections)) this.drawBuffer(vertexBuffer, renderLayer, matrix);
+        } else {
+            ranges.drawVisible(this.mergedSections, renderLayer.getDrawMode(), () -> this.drawBuffer(vertexBuffer, renderLayer, matrix));
+        }
+    }
+
+    private void drawProgressive(MeshLevel level, boolean translucentPass, Matrix4f matrix) {
+        for (var entry : level.progressiveBuffers.int2ObjectEntrySet()) {
+            if (!this.visibleSections.get(entry.getIntKey())) continue;
+
+            entry.getValue().forEach((renderLayer, vertexBuffer) -> {
+                if ((renderLayer == RenderLayer.getTranslucent()) != translucentPass) return;
+                if (!level.canDrawProgressive(renderLayer)) return;
+
+                this.drawBuffer(vertexBuffer, renderLayer, matrix);
+            });
+        }
+    }
+
     private void drawBuffer(VertexBuffer vertexBuffer, RenderLayer renderLayer, Matrix4f matrix) {
+        // compact positions are relative to the section
+        // grid, which the origin may not be aligned to
+        if (WorldMesherRenderLayers.isCompact(renderLayer)) {
+            matrix = new Matrix4f(matrix).translate(-(this.origin.getX() & 15), -(this.origin.getY() & 15), -(this.origin.getZ() & 15));
+        }
+
         renderLayer.startDrawing();
         renderStartAction.run();
 
@@ -125,10 +338,11 @@ public class WorldMesh {
     }
 
     /**
-     * Checks whether this mesh is ready for rendering
+     * Checks whether this mesh is ready for rendering, which
+     * progressive meshes already are during their first build
      */
     public boolean canRender() {
-        return this.state.canRender;
+        return this.state.canRender || (this.progressive && this.state == MeshState.BUILDING);
     }
 
     /**
@@ -165,6 +379,22 @@ public class WorldMesh {
         return this.buildProgress();
     }
 
+    /**
+     * @return Statistics about the most recent successful build of this
+     * mesh, or {@code null} if it has not finished building yet
+     */
+    public @Nullable BuildStats lastBuildStats() {
+        return this.lastBuildStats;
+    }
+
+    /**
+     * @return How many rebuilds of this mesh found none of the sections they were
+     * supposed to rebuild changed, and thus did not tessellate or upload anything
+     */
+    public int skippedRebuilds() {
+        return this.skippedRebuilds.get();
+    }
+
     /**
      * @return An object describing the entities and block
      * entities in the area this mesh is covering, with positions
@@ -212,16 +442,100 @@ public class WorldMesh {
     }
 
     /**
-     * Reset this mesh to {@link MeshState#NEW}, releasing
-     * all vertex buffers in the process
+     * Collect the block entities and entities in the volume of this mesh again and swap
+     * them in as its new {@link #renderInfo()}, without re-tessellating or uploading
+     * anything. Block entities of live worlds are taken from the block entity maps
+     * of their chunks, which keeps this cheap enough to call frequently
+     * <p>
+     * Starting a refresh cancels the previous one if it is still running. Builds which
+     * started before the refresh keep the render info they captured to themselves,
+     * so they never replace the newer one of the refresh once they finish
+     *
+     * @return A future completing once the new render info, or an even newer one, is in place
+     */
+    public CompletableFuture<Void> refreshDynamicInfo() {
+        var token = new CancellationToken();
+        synchronized (this) {
+            if (this.refreshToken != null) this.refreshToken.cancel();
+            this.refreshToken = token;
+        }
+
+        long ticket = this.renderInfoTickets.incrementAndGet();
+
+        var client = MinecraftClient.getInstance();
+        var entitiesFuture = this.captureEntities(token, nanos -> {});
+
+        Supplier<Map<BlockPos, BlockEntity>> blockEntityScan = () -> {
+            var blockEntities = new HashMap<BlockPos, BlockEntity>();
+            WorldSnapshot.forEachBlockEntity(this.world, this.origin, this.end, (pos, blockEntity) -> blockEntities.put(pos.subtract(this.origin), blockEntity));
+            return blockEntities;
+        };
+
+        // live worlds may only be read on the client thread
+        var blockEntitiesFuture = this.world instanceof World
+                ? client.submit(blockEntityScan)
+                : CompletableFuture.completedFuture(blockEntityScan.get());
+
+        return blockEntitiesFuture.thenCombine(entitiesFuture, (blockEntities, entities) -> {
+            token.throwIfCancelled();
+            this.publishRenderInfo(ticket, this.createRenderInfo(blockEntities, entities));
+
+            return null;
+        });
+    }
+
+    /**
+     * Reset this mesh to {@link MeshState#NEW}, releasing all vertex
+     * buffers and cancelling any running build in the process
      */
     public void reset() {
-        this.bufferStorage.forEach((renderLayer, vertexBuffer) -> vertexBuffer.close());
-        this.bufferStorage.clear();
+        this.cancelBuild();
+
+        synchronized (this) {
+            if (this.refreshToken != null) this.refreshToken.cancel();
+            this.refreshToken = null;
+        }
+
+        this.levels.forEach(MeshLevel::close);
+        this.memoryBudget.untrack(this);
+        this.sectionGeometryRetained = false;
+        this.evicted = false;
+        this.restoreRequested = false;
+
+        synchronized (this.sectionHashes) {
+            this.sectionHashes.clear();
+        }
+
+        synchronized (this.dirtySections) {
+            this.dirtySections.clear();
+        }
 
         this.state = MeshState.NEW;
     }
 
+    /**
+     * Release the vertex buffers of this mesh on behalf of its {@link MeshMemoryBudget}, keeping
+     * its section geometry so that it can be merged and uploaded again once this mesh is rendered.
+     * Meshes which are building, or whose geometry is neither retained nor cached, are left alone.
+     * Must be called on the render thread
+     *
+     * @return Whether this mesh was evicted
+     */
+    synchronized boolean evict() {
+        RenderSystem.assertOnRenderThread();
+        if (this.state != MeshState.READY || this.buildFuture != null) return false;
+        if (!this.sectionGeometryRetained && this.meshCache == null) return false;
+
+        boolean compressGeometry = this.compressEvictedGeometry && this.sectionGeometryRetained;
+        this.levels.forEach(level -> level.evict(compressGeometry));
+        this.memoryBudget.untrack(this);
+
+        this.evicted = true;
+        this.restoreRequested = false;
+        this.state = MeshState.EVICTED;
+        return true;
+    }
+
     /**
      * Renamed to {@link #reset()}
      */
@@ -231,204 +545,647 @@ public class WorldMesh {
     }
 
     /**
-     * Schedule a rebuild of this mesh on
-     * the main worker executor
+     * Mark the block at the given position as changed. The next rebuild
+     * then only re-tessellates the sections this change can affect,
+     * including neighboring sections whose culling or lighting depends on it
+     *
+     * @param pos The changed position, in world coordinates
+     */
+    public void markDirty(BlockPos pos) {
+        this.markDirty(pos.getX(), pos.getY(), pos.getZ(), pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    /**
+     * Mark every block intersecting the given box as changed,
+     * see {@link #markDirty(BlockPos)}
+     *
+     * @param box The changed area, in world coordinates
+     */
+    public void markDirty(Box box) {
+        this.markDirty(
+                MathHelper.floor(box.minX), MathHelper.floor(box.minY), MathHelper.floor(box.minZ),
+                MathHelper.ceil(box.maxX) - 1, MathHelper.ceil(box.maxY) - 1, MathHelper.ceil(box.maxZ) - 1
+        );
+    }
+
+    private void markDirty(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        // a block influences the culling and smooth lighting
+        // of the faces of every block directly around it
+        minX = Math.max(minX - 1, this.origin.getX());
+        minY = Math.max(minY - 1, this.origin.getY());
+        minZ = Math.max(minZ - 1, this.origin.getZ());
+        maxX = Math.min(maxX + 1, this.end.getX());
+        maxY = Math.min(maxY + 1, this.end.getY());
+        maxZ = Math.min(maxZ + 1, this.end.getZ());
+
+        if (minX > maxX || minY > maxY || minZ > maxZ) return;
+
+        synchronized (this.dirtySections) {
+            for (int sectionX = ChunkSectionPos.getSectionCoord(minX); sectionX <= ChunkSectionPos.getSectionCoord(maxX); sectionX++) {
+                for (int sectionY = ChunkSectionPos.getSectionCoord(minY); sectionY <= ChunkSectionPos.getSectionCoord(maxY); sectionY++) {
+                    for (int sectionZ = ChunkSectionPos.getSectionCoord(minZ); sectionZ <= ChunkSectionPos.getSectionCoord(maxZ); sectionZ++) {
+                        this.dirtySections.add(ChunkSectionPos.asLong(sectionX, sectionY, sectionZ));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-sort the translucent quads of this mesh for the given view position
+     * on the main worker executor, see {@link #resortTranslucency(Vec3d, Executor)}
      */
-    public synchronized void scheduleRebuild() {
-        this.scheduleRebuild(Util.getMainWorkerExecutor());
+    public CompletableFuture<Void> resortTranslucency(Vec3d viewPos) {
+        return this.resortTranslucency(viewPos, Util.getMainWorkerExecutor());
+    }
+
+    /**
+     * Re-sort the translucent quads of every level of this mesh back to front as seen
+     * from the given position, without rebuilding it. The quads are sorted on the
+     * supplied executor, after which only the index buffers of the translucent
+     * layers are uploaded again. Later builds sort for this position as well,
+     * instead of for the client's camera
+     * <p>
+     * Nothing is sorted if the position is closer than {@link Builder#translucencyResortDistance(double)}
+     * to the one last sorted for, or if a re-sort is still running. Must be called on the render thread
+     *
+     * @param viewPos The position the mesh is viewed from, in world coordinates
+     * @return A future completing once the re-sorted quads are uploaded
+     */
+    public CompletableFuture<Void> resortTranslucency(Vec3d viewPos, Executor executor) {
+        RenderSystem.assertOnRenderThread();
+        if (this.resortFuture != null && !this.resortFuture.isDone()) return this.resortFuture;
+
+        var lastViewPos = this.sortViewPos;
+        if (lastViewPos != null && lastViewPos.squaredDistanceTo(viewPos) < this.resortDistance * this.resortDistance) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        this.sortViewPos = viewPos;
+
+        var targets = this.levels.stream().map(MeshLevel::translucentSorting).filter(Objects::nonNull).toList();
+        if (targets.isEmpty()) return CompletableFuture.completedFuture(null);
+
+        record SortedIndices(MeshLevel.TranslucentSorting target, BufferBuilder builder, BufferBuilder.BuiltBuffer indices) {}
+
+        var sorter = this.sorterFor(viewPos);
+        this.resortFuture = CompletableFuture.supplyAsync(() -> targets.stream().map(target -> {
+            // the restored quad centers are all the builder needs to
+            // write a sorted index buffer without any vertex data
+            var builder = this.bufferPool.acquire(0);
+            builder.begin(VertexFormat.DrawMode.QUADS, RenderLayer.getTranslucent().getVertexFormat());
+            builder.restoreState(target.sortingData());
+            builder.setSorter(sorter);
+
+            return new SortedIndices(target, builder, builder.end());
+        }).toList(), executor).thenAcceptAsync(sortedIndices -> {
+            for (var sorted : sortedIndices) {
+                // a build may have replaced the buffer in the meantime
+                if (this.levels.stream().anyMatch(level -> level.translucentSorting() == sorted.target)) {
+                    sorted.target.buffer().bind();
+                    sorted.target.buffer().upload(sorted.indices);
+                } else {
+                    sorted.indices.release();
+                }
+
+                this.bufferPool.release(sorted.builder);
+            }
+
+            VertexBuffer.unbind();
+        }, runnable -> RenderSystem.recordRenderCall(runnable::run)).whenComplete((unused, throwable) -> {
+            if (throwable != null) LOGGER.warn("Re-sorting translucent quads failed", throwable);
+        });
+
+        return this.resortFuture;
+    }
+
+    /**
+     * Schedule a rebuild of this mesh through its {@link WorldMeshScheduler},
+     * or on the main worker executor if it was not given one
+     *
+     * @return A future completing when the requested build is finished and uploaded. If the scheduler
+     * of this mesh rejects the build because its queue is full, the future completes with a
+     * {@link RejectedExecutionException} - the build is deferred by the
+     * scheduler then, and still happens once its queue has room again
+     */
+    public CompletableFuture<Void> scheduleRebuild() {
+        // deliberately not synchronized, the scheduler may start
+        // builds of other meshes from inside this call
+        return this.scheduler != null
+                ? this.scheduler.schedule(this, this.buildPriority)
+                : this.scheduleRebuild(Util.getMainWorkerExecutor());
+    }
+
+    /**
+     * Replace the priority this mesh's builds are requested with from its {@link WorldMeshScheduler}
+     */
+    public void setBuildPriority(DoubleSupplier buildPriority) {
+        this.buildPriority = buildPriority;
     }
 
     /**
      * Schedule a rebuild of this mesh,
      * on the supplied executor
+     * <p>
+     * If this mesh has been built before and areas of it were marked
+     * through {@link #markDirty(BlockPos)} or {@link #markDirty(Box)} since,
+     * only the sections covering those areas are considered. Otherwise,
+     * the entire mesh is
+     * <p>
+     * Of the considered sections, only those whose block states or light
+     * changed since they were last built are actually rebuilt - if none did,
+     * the rebuild completes without tessellating or uploading anything
      *
-     * @return A future completing when the build process is finished,
-     * or {@code null} if this mesh is already building
+     * If this mesh is already building, the request is remembered instead and a single
+     * follow-up build is started once the current one finishes, no matter how many
+     * requests were made in the meantime
+     *
+     * The build itself returns as soon as it has handed its vertex data to the upload queue
+     * of this mesh. Whatever it changed only becomes visible once all of that data is
+     * uploaded, at which point the mesh switches to {@link MeshState#READY} all at once
+     *
+     * @return A future completing when the build process is finished and uploaded - if this mesh is
+     * already building, that is the follow-up build shared by all requests made during it
      */
-    public synchronized CompletableFuture<Void> scheduleRebuild(Executor executor) {
-        if (this.buildFuture != null) return this.buildFuture;
+    public CompletableFuture<Void> scheduleRebuild(Executor executor) {
+        var future = new CompletableFuture<Void>();
+        Runnable launch;
 
+        synchronized (this) {
+            if (this.buildFuture != null) {
+                // every request made during a build is coalesced into a single follow-up
+                // build, which picks up all changes made since the current one started
+                if (this.followUpFuture == null) this.followUpFuture = new CompletableFuture<>();
+                this.followUpExecutor = executor;
+
+                return this.followUpFuture;
+            }
+
+            launch = this.prepareBuild(future, executor);
+        }
+
+        // launched without holding the lock of this mesh, since an executor
+        // running the build right away would complete its future in here
+        launch.run();
+        return future;
+    }
+
+    /**
+     * Put this mesh into the building state and make the given future the one of its
+     * current build. Must be called while holding the lock of this mesh, the build
+     * itself is only started once the returned action is run - which must happen
+     * after that lock was released
+     */
+    private Runnable prepareBuild(CompletableFuture<Void> future, Executor executor) {
         this.buildProgress = 0;
         this.state = this.state != MeshState.NEW
                 ? MeshState.REBUILDING
                 : MeshState.BUILDING;
 
-        this.buildFuture = CompletableFuture.runAsync(this::build, executor).whenComplete((unused, throwable) -> {
-            this.buildFuture = null;
+        final @Nullable LongSet dirtySections;
+        synchronized (this.dirtySections) {
+            // an evicted mesh merges all of its retained geometry again, even if nothing changed
+            dirtySections = this.state != MeshState.NEW && this.sectionGeometryRetained && (this.evicted || !this.dirtySections.isEmpty())
+                    ? new LongOpenHashSet(this.dirtySections)
+                    : null;
+
+            this.dirtySections.clear();
+        }
+
+        var token = new CancellationToken();
 
-            if (throwable == null) {
-                state = MeshState.READY;
+        this.buildToken = token;
+        this.buildFuture = future;
+
+        return () -> CompletableFuture.supplyAsync(() -> this.build(dirtySections, token), executor)
+                .thenCompose(Function.identity())
+                .whenComplete((unused, throwable) -> this.finishBuild(future, throwable, dirtySections));
+    }
+
+    private void finishBuild(CompletableFuture<Void> future, @Nullable Throwable throwable, @Nullable LongSet dirtySections) {
+        var cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+
+        @Nullable Runnable launchFollowUp = null;
+        synchronized (this) {
+            this.buildFuture = null;
+            this.buildToken = null;
+
+            // if this build did not restore an evicted mesh,
+            // the next frame rendering it asks for another one
+            this.restoreRequested = false;
+
+            if (cause == null) {
+                // a reset which came too late to stop the build still wins
+                if (this.state != MeshState.NEW) this.state = this.evicted ? MeshState.EVICTED : MeshState.READY;
+            } else if (cause instanceof CancellationException) {
+                // a reset already put the mesh back to NEW, otherwise
+                // whatever was rendered before the build still is
+                if (this.state == MeshState.REBUILDING) this.state = this.evicted ? MeshState.EVICTED : MeshState.READY;
+                else if (this.state == MeshState.BUILDING) this.state = MeshState.NEW;
             } else {
-                LOGGER.warn("World mesh building failed", throwable);
-                state = MeshState.CORRUPT;
+                LOGGER.warn("World mesh building failed", cause);
+                this.state = MeshState.CORRUPT;
             }
-        });
 
-        return this.buildFuture;
+            if (cause != null && dirtySections != null) {
+                synchronized (this.dirtySections) {
+                    this.dirtySections.addAll(dirtySections);
+                }
+            }
+
+            // the follow-up becomes the current build right away, so that
+            // a cancellation coming in before it is launched still reaches it
+            if (this.followUpFuture != null) {
+                launchFollowUp = this.prepareBuild(this.followUpFuture, this.followUpExecutor);
+                this.followUpFuture = null;
+            }
+        }
+
+        // whoever waits on these futures - a scheduler, for example - may go on
+        // to build other meshes, so they are never completed while holding the lock of this one
+        if (launchFollowUp != null) launchFollowUp.run();
+
+        if (cause == null) future.complete(null);
+        else future.completeExceptionally(cause);
+    }
+
+    /**
+     * Abort the build of this mesh which is currently running, as well as the follow-up
+     * build requested while it was running or one waiting in its scheduler, if any. Whatever this mesh rendered
+     * before the build started is kept, and the futures of both builds
+     * complete with a {@link CancellationException}
+     */
+    public void cancelBuild() {
+        @Nullable CompletableFuture<Void> followUp;
+        synchronized (this) {
+            if (this.buildToken != null) this.buildToken.cancel();
+
+            followUp = this.followUpFuture;
+            this.followUpFuture = null;
+        }
+
+        // like the futures of finished builds, these are only completed outside the lock of this mesh
+        if (this.scheduler != null) this.scheduler.cancel(this);
+        if (followUp != null) followUp.completeExceptionally(new CancellationException("World mesh build was cancelled"));
     }
 
-    private void build() {
+    private CompletableFuture<Void> build(@Nullable LongSet dirtySections, CancellationToken token) {
+        token.throwIfCancelled();
+
         var client = MinecraftClient.getInstance();
-        var blockRenderManager = client.getBlockRenderManager();
+        var resources = TessellationResources.client();
 
-        var blockRenderer = new WorldMesherBlockModelRenderer();
-        var fluidRenderer = new WorldMesherFluidRenderer();
+        // sections can only be rebuilt on their own if everything but their
+        // contents is the same as when the retained geometry was built
+        long optionsKey = this.optionsKey(resources);
+        boolean fullRebuild = !this.sectionGeometryRetained || optionsKey != this.builtOptionsKey;
 
-        var matrices = new MatrixStack();
-        var builderStorage = new HashMap<RenderLayer, BufferBuilder>();
-        var random = Random.createLocal();
+        var stats = new BuildStats.Recorder(this, !fullRebuild);
 
-        WorldMesherRenderContext renderContext = null;
-        try {
-            //noinspection UnstableApiUsage
-            renderContext = RendererAccess.INSTANCE.getRenderer() instanceof IndigoRenderer
-                    ? new WorldMesherRenderContext(this.world, layer -> this.getOrCreateBuilder(builderStorage, layer))
-                    : null;
-        } catch (Throwable throwable) {
-            var fabricApiVersion = FabricLoader.getInstance().getModContainer("worldmesher").get().getMetadata().getCustomValue("worldmesher:fabric_api_build_version").getAsString();
-            LOGGER.error(
-                    "Could not create a context for rendering Fabric API models. This is most likely due to an incompatible Fabric API version - this build of WorldMesher was compiled against '{}', try that instead",
-                    fabricApiVersion,
-                    throwable
-            );
-        }
+        long renderInfoTicket = this.renderInfoTickets.incrementAndGet();
+        var entitiesFuture = this.captureEntities(token, nanos -> stats.record(BuildStats.Phase.ENTITY_CAPTURE, nanos));
 
-        this.entitiesFrozen = this.freezeEntities;
-        var entitiesFuture = new CompletableFuture<List<DynamicRenderInfo.EntityEntry>>();
-        client.execute(() -> {
-            entitiesFuture.complete(this.entitySupplier.apply(client.player, this.origin, this.end.add(1, 1, 1))
-                    .stream()
-                    .map(entity -> {
-                        if (this.freezeEntities) {
-                            var originalEntity = entity;
-                            entity = entity.getType().create(client.world);
-
-                            entity.copyFrom(originalEntity);
-                            entity.copyPositionAndRotation(originalEntity);
-                            entity.tick();
-                        }
+        var candidateSections = fullRebuild || dirtySections == null
+                ? this.sections
+                : this.sections.stream().filter(section -> dirtySections.contains(section.pos())).toList();
+
+        // live worlds may only be read on the client thread, everything
+        // after this point only ever looks at the captured snapshot
+        var snapshot = this.world instanceof World
+                ? client.submit(() -> stats.time(BuildStats.Phase.SNAPSHOT, () -> WorldSnapshot.capture(this.world, candidateSections))).join()
+                : stats.time(BuildStats.Phase.SNAPSHOT, () -> WorldSnapshot.capture(this.world, candidateSections));
 
-                        return new DynamicRenderInfo.EntityEntry(
-                                entity,
-                                client.getEntityRenderDispatcher().getLight(entity, 0)
-                        );
-                    }).toList());
+        token.throwIfCancelled();
+
+        // hashing is much cheaper than tessellating, so any
+        // section whose contents did not change is skipped
+        var contentHashes = new Long2LongOpenHashMap();
+        stats.time(BuildStats.Phase.CONTENT_HASH, () -> {
+            for (var section : candidateSections) {
+                contentHashes.put(section.pos(), snapshot.contentHash(section));
+            }
         });
 
-        var blockEntities = new HashMap<BlockPos, BlockEntity>();
+        final List<MeshSection> sectionsToBuild;
+        synchronized (this.sectionHashes) {
+            sectionsToBuild = fullRebuild
+                    ? candidateSections
+                    : candidateSections.stream().filter(section -> !this.sectionHashes.containsKey(section.pos()) || this.sectionHashes.get(section.pos()) != contentHashes.get(section.pos())).toList();
+        }
 
-        int currentBlockIndex = 0;
-        int blocksToBuild = (this.end.getX() - this.origin.getX() + 1)
-                * (this.end.getY() - this.origin.getY() + 1)
-                * (this.end.getZ() - this.origin.getZ() + 1);
+        stats.sectionsBuilt(sectionsToBuild.size());
+        stats.sectionsUnchanged(candidateSections.size() - sectionsToBuild.size());
 
-        for (var pos : BlockPos.iterate(this.origin, this.end)) {
-            currentBlockIndex++;
-            this.buildProgress = currentBlockIndex / (float) blocksToBuild;
+        final @Nullable MeshCache.CachedMesh cachedMesh = this.meshCache != null && fullRebuild
+                ? stats.time(BuildStats.Phase.CACHE, () -> this.meshCache.load(this.meshKey(optionsKey, contentHashes), this.origin, this.end, this.levels))
+                : null;
 
-            var state = world.getBlockState(pos);
-            if (state.isAir()) continue;
+        var blockEntities = new HashMap<BlockPos, BlockEntity>();
+        var pendingUploads = new ArrayList<MeshLevel.PendingUpload>();
+        var progressiveUploads = Collections.synchronizedList(new ArrayList<CompletableFuture<Void>>());
 
-            var renderPos = pos.subtract(origin);
-            if (world.getBlockEntity(pos) != null) {
-                blockEntities.put(renderPos, world.getBlockEntity(pos));
+        if (!fullRebuild && sectionsToBuild.isEmpty() && !this.evicted) {
+            this.skippedRebuilds.incrementAndGet();
+            blockEntities.putAll(this.renderInfo.blockEntities());
+
+            var previousStats = this.lastBuildStats;
+            if (previousStats != null) previousStats.layers().forEach((layer, layerStats) -> stats.layer(layer, layerStats.vertices()));
+        } else if (cachedMesh != null) {
+            stats.fromCache();
+            stats.sectionsBuilt(0);
+
+            for (int level = 0; level < this.levels.size(); level++) {
+                pendingUploads.add(this.levels.get(level).load(cachedMesh.levels().get(level), this.bufferPool));
             }
 
-            if (!world.getFluidState(pos).isEmpty()) {
-                var fluidState = world.getFluidState(pos);
-                var fluidLayer = RenderLayers.getFluidLayer(fluidState);
+            cachedMesh.levels().get(0).forEach((layer, cachedLayer) -> stats.layer(layer, cachedLayer.vertexCount()));
+            snapshot.blockEntities().forEach((pos, blockEntity) -> {
+                var blockPos = BlockPos.fromLong(pos);
+                if (!BlockBox.create(this.origin, this.end).contains(blockPos)) return;
 
-                matrices.push();
-                matrices.translate(-(pos.getX() & 15), -(pos.getY() & 15), -(pos.getZ() & 15));
-                matrices.translate(renderPos.getX(), renderPos.getY(), renderPos.getZ());
+                blockEntities.put(blockPos.subtract(this.origin), blockEntity);
+            });
+        } else {
+            var sizeHints = this.levels.get(0).sectionSizeHints();
+
+            var builtBlocks = new AtomicInteger();
+            int blocksToBuild = sectionsToBuild.stream().mapToInt(MeshSection::blockCount).sum();
+
+            // a tessellator is only ever used by one section task at a time, so this
+            // ends up holding about one of them for every thread the executor uses
+            var tessellators = new ConcurrentLinkedQueue<SectionTessellator>();
+            var progressiveSorter = this.progressive ? this.sorterFor(this.sortViewPos != null ? this.sortViewPos : client.gameRenderer.getCamera().getPos()) : null;
+
+            try {
+                // every task produces the geometry of its section for each level of detail
+                var sectionGeometry = stats.time(BuildStats.Phase.TESSELLATION, () -> {
+                    var futures = sectionsToBuild.stream().map(section -> CompletableFuture.supplyAsync(() -> {
+                        token.throwIfCancelled();
+
+                        var tessellator = tessellators.poll();
+                        if (tessellator == null) {
+                            tessellator = new SectionTessellator(resources, this.bufferPool, sizeHints, snapshot, this.origin, this.end, this.cull, this.useGlobalNeighbors, this.greedyMeshing, this.compactVertices);
+                        }
 
-                fluidRenderer.setMatrix(matrices.peek().getPositionMatrix());
-                fluidRenderer.render(world, pos, this.getOrCreateBuilder(builderStorage, fluidLayer), state, fluidState);
+                        var geometry = new SectionGeometry[this.levels.size()];
+                        try {
+                            geometry[0] = tessellator.tessellate(section);
+                            for (int level = 1; level < geometry.length; level++) {
+                                geometry[level] = tessellator.tessellateLod(section, this.levels.get(level).factor);
+                            }
+
+                            this.buildProgress = builtBlocks.addAndGet(section.blockCount()) / (float) blocksToBuild;
+
+                            // progressive meshes make every section drawable as soon as
+                            // it is done, until the merged buffers replace them
+                            if (this.progressive) {
+                                int sectionIndex = this.sectionIndices.get(section.pos());
+
+                                var uploads = new ArrayList<UploadQueue.Upload>();
+                                for (int level = 0; level < geometry.length; level++) {
+                                    uploads.add(this.levels.get(level).progressiveUpload(sectionIndex, geometry[level], this.bufferPool, progressiveSorter));
+                                    stats.nativeBytesAllocated.addAndGet(geometry[level].byteSize());
+                                }
+
+                                progressiveUploads.add(this.uploadQueue.submit(uploads));
+                            }
+
+                            for (var levelGeometry : geometry) stats.section(levelGeometry);
+                            return geometry;
+                        } catch (Throwable throwable) {
+                            closeAll(geometry);
+                            throw throwable;
+                        } finally {
+                            tessellators.add(tessellator);
+                        }
+                    }, this.sectionExecutor)).toList();
+
+                    try {
+                        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+                    } catch (CompletionException e) {
+                        futures.forEach(future -> future.thenAccept(WorldMesh::closeAll));
+                        throw e;
+                    } finally {
+                        tessellators.forEach(SectionTessellator::close);
+                    }
+
+                    return futures.stream().map(CompletableFuture::join).toList();
+                });
+
+                // past this point the build always runs to completion, so that
+                // the retained geometry never diverges from the vertex buffers
+                if (token.isCancelled()) {
+                    sectionGeometry.forEach(WorldMesh::closeAll);
+                    token.throwIfCancelled();
+                }
 
-                matrices.pop();
+                stats.time(BuildStats.Phase.MERGE, () -> {
+                    for (int level = 0; level < this.levels.size(); level++) {
+                        final int levelIndex = level;
+                        var rebuilt = sectionGeometry.stream().map(geometry -> geometry[levelIndex]).toList();
+
+                        pendingUploads.add(this.levels.get(level).merge(this.sections, rebuilt, fullRebuild, this.bufferPool, geometry -> {
+                            if (levelIndex != 0) return;
+
+                            geometry.layers().forEach((layer, layerData) -> stats.layer(layer, layerData.vertexCount()));
+                            blockEntities.putAll(geometry.blockEntities);
+                        }));
+                    }
+                });
+            } catch (Throwable throwable) {
+                this.discardProgressive(progressiveUploads);
+                throw throwable;
             }
+        }
+
+        var sortPos = this.sortViewPos != null ? this.sortViewPos : client.gameRenderer.getCamera().getPos();
+        for (var pending : pendingUploads) {
+            // ending the builders is where the translucent quads get sorted,
+            // do that here instead of on the render thread
+            pending.builders().forEach((layer, builder) -> {
+                stats.nativeBytesAllocated.addAndGet(BufferBuilders.capacity(builder));
+
+                if (layer == RenderLayer.getTranslucent()) {
+                    builder.setSorter(this.sorterFor(sortPos));
+                    pending.sortingData().put(layer, builder.popState());
+                    pending.builtBuffers().put(layer, stats.time(BuildStats.Phase.TRANSLUCENT_SORT, builder::end));
+                } else {
+                    pending.builtBuffers().put(layer, builder.end());
+                }
+            });
+        }
+
+        var renderInfo = stats.time(BuildStats.Phase.RENDER_INFO, () -> this.createRenderInfo(blockEntities, entitiesFuture.join()));
+
+        // the hashes this build leaves behind, only remembered once it is actually
+        // visible so that a failed build never causes sections to be skipped
+        var builtHashes = new Long2LongOpenHashMap();
+        synchronized (this.sectionHashes) {
+            if (!fullRebuild) builtHashes.putAll(this.sectionHashes);
+        }
+        builtHashes.putAll(contentHashes);
 
-            matrices.push();
-            matrices.translate(renderPos.getX(), renderPos.getY(), renderPos.getZ());
+        var uploads = new ArrayList<UploadQueue.Upload>();
+        for (int level = 0; level < pendingUploads.size(); level++) {
+            uploads.addAll(this.levels.get(level).uploads(pendingUploads.get(level)));
+        }
 
-            boolean alwaysDrawVolumeEdges = !this.useGlobalNeighbors;
+        // the layers are uploaded across however many frames the queue needs, and only
+        // replace what this mesh renders once the last of them is uploaded
+        Executor commitExecutor = pendingUploads.isEmpty() ? Runnable::run : RENDER_THREAD;
 
-            blockRenderer.clearCullingOverrides();
-            blockRenderer.setCullDirection(Direction.EAST, alwaysDrawVolumeEdges && pos.getX() == this.end.getX());
-            blockRenderer.setCullDirection(Direction.WEST, alwaysDrawVolumeEdges && pos.getX() == this.origin.getX());
-            blockRenderer.setCullDirection(Direction.SOUTH, alwaysDrawVolumeEdges && pos.getZ() == this.end.getZ());
-            blockRenderer.setCullDirection(Direction.NORTH, alwaysDrawVolumeEdges && pos.getZ() == this.origin.getZ());
-            blockRenderer.setCullDirection(Direction.UP, alwaysDrawVolumeEdges && pos.getY() == this.end.getY());
-            blockRenderer.setCullDirection(Direction.DOWN, alwaysDrawVolumeEdges && pos.getY() == this.origin.getY());
+        long uploadStart = System.nanoTime();
+        var uploaded = CompletableFuture.allOf(this.uploadQueue.submit(uploads), allSettled(progressiveUploads)).handleAsync((unused, throwable) -> {
+            // a reset while uploading already released everything this build would replace
+            if (throwable == null && this.state == MeshState.NEW) {
+                throwable = new CancellationException("World mesh was reset while uploading");
+            }
 
-            var blockLayer = RenderLayers.getBlockLayer(state);
+            if (throwable != null) {
+                for (int level = 0; level < pendingUploads.size(); level++) {
+                    this.levels.get(level).discard(pendingUploads.get(level), this.bufferPool);
+                }
 
-            final var model = blockRenderManager.getModel(state);
-            if (renderContext != null && !model.isVanillaAdapter()) {
-                renderContext.tessellateBlock(this.world, state, pos, model, matrices);
-            } else if (state.getRenderType() == BlockRenderType.MODEL) {
-                blockRenderer.render(this.world, model, state, pos, matrices, this.getOrCreateBuilder(builderStorage, blockLayer), cull, random, state.getRenderingSeed(pos), OverlayTexture.DEFAULT_UV);
+                throw throwable instanceof CompletionException completion ? completion : new CompletionException(throwable);
             }
 
-            matrices.pop();
-        }
+            for (int level = 0; level < pendingUploads.size(); level++) {
+                this.levels.get(level).commit(pendingUploads.get(level), this.bufferPool);
+            }
+
+            synchronized (this.sectionHashes) {
+                this.sectionHashes.clear();
+                this.sectionHashes.putAll(builtHashes);
+            }
 
-        if (builderStorage.containsKey(RenderLayer.getTranslucent())) {
-            var translucentBuilder = builderStorage.get(RenderLayer.getTranslucent());
-            var camera = client.gameRenderer.getCamera();
+            this.builtOptionsKey = optionsKey;
+            this.sectionGeometryRetained = cachedMesh == null;
+            this.publishRenderInfo(renderInfoTicket, renderInfo);
 
-            // TODO this camera position should probably be customizable
-            translucentBuilder.setSorter(VertexSorter.byDistance((float) camera.getPos().x - (float) origin.getX(), (float) camera.getPos().y - (float) origin.getY(), (float) camera.getPos().z - (float) origin.getZ()));
+            if (!pendingUploads.isEmpty()) {
+                this.evicted = false;
+                this.memoryBudget.track(this, this.uploadedBytes());
+                this.memoryBudget.enforce();
+            }
+
+            stats.record(BuildStats.Phase.UPLOAD_WAIT, System.nanoTime() - uploadStart);
+            return null;
+        }, commitExecutor);
+
+        // the section geometry is only changed by the next build, which cannot
+        // start before this one completes - so it is written out while the render
+        // thread is still uploading. partial rebuilds are not worth rewriting the
+        // whole mesh for, the next full one stores it again
+        if (this.meshCache != null && cachedMesh == null && fullRebuild && !sectionsToBuild.isEmpty()) {
+            stats.time(BuildStats.Phase.CACHE, () -> this.meshCache.store(this.meshKey(optionsKey, builtHashes), this.origin, this.end, this.sections, this.levels, token));
         }
 
-        var future = new CompletableFuture<Void>();
-        RenderSystem.recordRenderCall(() -> {
-            this.bufferStorage.forEach((renderLayer, vertexBuffer) -> vertexBuffer.close());
-            this.bufferStorage.clear();
+        return uploaded.thenRun(() -> this.lastBuildStats = stats.finish());
+    }
 
-            builderStorage.forEach((renderLayer, bufferBuilder) -> {
-                var newBuffer = new VertexBuffer(VertexBuffer.Usage.STATIC);
+    /**
+     * Drop every section uploaded on its own by a progressive build which failed,
+     * once all of their uploads are done
+     */
+    private void discardProgressive(List<CompletableFuture<Void>> progressiveUploads) {
+        if (progressiveUploads.isEmpty()) return;
+        allSettled(progressiveUploads).thenRunAsync(() -> this.levels.forEach(MeshLevel::clearProgressive), RENDER_THREAD);
+    }
 
-                newBuffer.bind();
-                newBuffer.upload(bufferBuilder.end());
+    // completes once all given futures did, no matter how
+    private static CompletableFuture<Void> allSettled(List<CompletableFuture<Void>> futures) {
+        synchronized (futures) {
+            return CompletableFuture.allOf(futures.stream().map(future -> future.exceptionally(throwable -> null)).toArray(CompletableFuture[]::new));
+        }
+    }
 
-                GlAllocationUtilsAccessor.worldmesher$getAllocator().free(
-                        MemoryUtil.memAddress(((BufferBuilderAccessor) bufferBuilder).worldmesher$getBuffer(), 0)
-                );
+    private CompletableFuture<List<DynamicRenderInfo.EntityEntry>> captureEntities(CancellationToken token, LongConsumer timeSink) {
+        var client = MinecraftClient.getInstance();
 
-                // primarily here to inform ModernFix about what we did
-                ((BufferBuilderAccessor) bufferBuilder).worldmesher$setBuffer(null);
+        this.entitiesFrozen = this.freezeEntities;
+        return EntityCapture.capture(
+                () -> this.entitySupplier.apply(client.player, this.origin, this.end.add(1, 1, 1)),
+                this.freezeEntities,
+                token,
+                timeSink
+        );
+    }
 
-                var discardedBuffer = this.bufferStorage.put(renderLayer, newBuffer);
-                if (discardedBuffer != null) {
-                    discardedBuffer.close();
-                }
-            });
+    /**
+     * Swap in the given render info, unless a capture which started
+     * after the one holding the given ticket already published its own
+     */
+    private synchronized void publishRenderInfo(long ticket, DynamicRenderInfo renderInfo) {
+        if (ticket < this.publishedRenderInfoTicket) return;
 
-            future.complete(null);
-        });
-        future.join();
+        this.publishedRenderInfoTicket = ticket;
+        this.renderInfo = renderInfo;
+    }
 
+    private DynamicRenderInfo createRenderInfo(Map<BlockPos, BlockEntity> blockEntities, List<DynamicRenderInfo.EntityEntry> capturedEntities) {
         var entities = HashMultimap.<Vec3d, DynamicRenderInfo.EntityEntry>create();
-        for (var entityEntry : entitiesFuture.join()) {
+        for (var entityEntry : capturedEntities) {
             entities.put(
                     entityEntry.entity().getPos().subtract(this.origin.getX(), this.origin.getY(), this.origin.getZ()),
                     entityEntry
             );
         }
 
-        this.renderInfo = new DynamicRenderInfo(
-                blockEntities, entities
+        return new DynamicRenderInfo(
+                this.origin, blockEntities, entities
         );
     }
 
-    private VertexConsumer getOrCreateBuilder(Map<RenderLayer, BufferBuilder> builderStorage, RenderLayer layer) {
-        return builderStorage.computeIfAbsent(layer, renderLayer -> {
-            var builder = new BufferBuilder(layer.getExpectedBufferSize());
-            builder.begin(VertexFormat.DrawMode.QUADS, VertexFormats.POSITION_COLOR_TEXTURE_LIGHT_NORMAL);
+    // the uploaded bytes of every layer, across all levels
+    private Map<RenderLayer, Long> uploadedBytes() {
+        var bytes = new HashMap<RenderLayer, Long>();
+        for (var level : this.levels) {
+            level.bufferBytes.forEach((layer, layerBytes) -> bytes.merge(layer, layerBytes, Long::sum));
+        }
 
-            return builder;
-        });
+        return bytes;
+    }
+
+    private VertexSorter sorterFor(Vec3d viewPos) {
+        return VertexSorter.byDistance((float) (viewPos.x - this.origin.getX()), (float) (viewPos.y - this.origin.getY()), (float) (viewPos.z - this.origin.getZ()));
+    }
+
+    /**
+     * Hash everything the tessellated geometry depends on besides the contents of
+     * its sections - the volume, build options and currently loaded resources
+     */
+    private long optionsKey(TessellationResources resources) {
+        long key = mixKey(this.origin.asLong(), this.end.asLong());
+
+        boolean greedyMeshing = this.greedyMeshing && WorldMesherRenderLayers.greedyProgram() != null;
+        boolean compactVertices = this.compactVertices && WorldMesherRenderLayers.compactProgramsLoaded();
+        key = mixKey(key, (this.cull ? 1 : 0) | (this.useGlobalNeighbors ? 2 : 0) | (greedyMeshing ? 4 : 0) | (resources.ambientOcclusion() ? 8 : 0) | (compactVertices ? 16 : 0));
+
+        for (var level : this.levels) key = mixKey(key, level.factor);
+        return mixKey(key, MeshCache.resourceFingerprint());
+    }
+
+    /**
+     * Combine the given options key with the content hashes of all
+     * sections into the key of this mesh in its cache
+     */
+    private long meshKey(long optionsKey, Long2LongMap sectionHashes) {
+        long key = optionsKey;
+        for (var section : this.sections) key = mixKey(key, sectionHashes.get(section.pos()));
+
+        return HashCommon.mix(key);
+    }
+
+    private static long mixKey(long key, long value) {
+        return (key ^ value) * 0x9E3779B97F4A7C15L;
+    }
+
+    private static void closeAll(SectionGeometry[] geometry) {
+        for (var levelGeometry : geometry) {
+            if (levelGeometry != null) levelGeometry.close();
+        }
     }
 
     public static class Builder {
@@ -440,12 +1197,27 @@ public class WorldMesh {
         private final BlockPos end;
         private boolean cull = true;
         private boolean useGlobalNeighbors = false;
+        private boolean greedyMeshing = false;
+        private boolean compactVertices = false;
+        private int[] levelFactors = new int[0];
         private boolean freezeEntities = false;
-
-        private Runnable startAction = () -> {
-        };
-        private Runnable endAction = () -> {
-        };
+        private boolean progressive = false;
+        private Executor sectionExecutor = ForkJoinPool.commonPool();
+        private NativeBufferPool bufferPool = NativeBufferPool.shared();
+        private UploadQueue uploadQueue = BudgetedUploadQueue.shared();
+        private MeshMemoryBudget memoryBudget = MeshMemoryBudget.shared();
+        private boolean compressEvictedGeometry = false;
+        private @Nullable MeshCache meshCache = null;
+        private double resortDistance = 1;
+        private @Nullable WorldMeshScheduler scheduler = null;
+        private DoubleSupplier buildPriority = () -> 0;
+
+        // shared by every builder, so that meshes without
+        // render actions can be shared through a registry
+        private static final Runnable NO_ACTION = () -> {};
+
+        private Runnable startAction = NO_ACTION;
+        private Runnable endAction = NO_ACTION;
 
         @Deprecated(forRemoval = true)
         public Builder(BlockRenderView world, BlockPos origin, BlockPos end, Function<PlayerEntity, List<Entity>> entitySupplier) {
@@ -480,22 +1252,200 @@ public class WorldMesh {
             return this;
         }
 
+        /**
+         * Merge adjacent, identically textured, tinted and lit faces of full-cube
+         * models in the solid layer into larger quads. This drastically cuts
+         * the vertex count of large, terrain-like meshes
+         * <p>
+         * Only faces with a single 16x16 sprite and uniform lighting are merged,
+         * everything else is still emitted per block. Merged faces are drawn with
+         * a separate shader which repeats the sprite across the quad
+         */
+        public Builder greedyMeshing() {
+            this.greedyMeshing = true;
+            return this;
+        }
+
+        /**
+         * Encode the solid and cutout layers in a compact vertex format, which takes 20
+         * instead of 32 bytes per vertex and is drawn with separate shaders. Positions are
+         * quantized to 1/1024th of a block and texture coordinates to 1/65535th of the atlas
+         * <p>
+         * The translucent and tripwire layers, as well as merged faces, stay in
+         * their usual formats. Meshes spanning more than 32 sections
+         * along any axis cannot be encoded and are built as usual
+         */
+        public Builder compactVertices() {
+            this.compactVertices = true;
+            return this;
+        }
+
+        /**
+         * Additionally build coarser levels of detail of the mesh, which can be
+         * rendered through {@link WorldMesh#render(MatrixStack, int)} when the mesh
+         * is small on screen. Every level groups the blocks of the volume into
+         * cubic cells of the given edge length, each of which is drawn
+         * as a single cube of the most common block inside it
+         *
+         * @param factors The edge length of the cells of each level, which
+         *                must be one of {@code 2}, {@code 4}, {@code 8} or {@code 16}
+         */
+        public Builder levelsOfDetail(int... factors) {
+            for (int factor : factors) {
+                if (factor != 2 && factor != 4 && factor != 8 && factor != 16) {
+                    throw new IllegalArgumentException("Level of detail factor must be one of 2, 4, 8 or 16, got " + factor);
+                }
+            }
+
+            this.levelFactors = Arrays.stream(factors).distinct().sorted().toArray();
+            return this;
+        }
+
         public Builder freezeEntities() {
             this.freezeEntities = true;
             return this;
         }
 
+        /**
+         * Upload every section as soon as it is tessellated and draw it on its own until the
+         * build finishes, instead of showing nothing until then. The mesh can already
+         * be rendered while it is {@link MeshState#BUILDING}, and while it is
+         * {@link MeshState#REBUILDING} sections which are not replaced yet are still drawn
+         * from the previous buffers
+         * <p>
+         * Layers which are drawn in full, like the translucent one, only show
+         * their new geometry once the build finishes
+         */
+        public Builder progressive() {
+            this.progressive = true;
+            return this;
+        }
+
+        /**
+         * Set the executor the 16³ sections of the mesh are tessellated on in parallel. Pass
+         * {@code Runnable::run} to tessellate them serially on the thread running the build,
+         * the resulting vertex data is identical either way
+         * <p>
+         * This should not be the same bounded executor a rebuild is scheduled on, since
+         * the build task blocks while waiting for its sections
+         */
+        public Builder sectionExecutor(Executor sectionExecutor) {
+            this.sectionExecutor = sectionExecutor;
+            return this;
+        }
+
+        /**
+         * Set the pool this mesh takes its native vertex buffers from
+         * and returns them to after uploading, {@link NativeBufferPool#shared()} by default
+         */
+        public Builder bufferPool(NativeBufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+            return this;
+        }
+
+        /**
+         * Set the queue the vertex data of this mesh's builds is uploaded through,
+         * {@link BudgetedUploadQueue#shared()} by default. Any other queue has to be
+         * {@linkplain UploadQueue#drain() drained} on the render thread by the caller
+         */
+        public Builder uploadQueue(UploadQueue uploadQueue) {
+            this.uploadQueue = uploadQueue;
+            return this;
+        }
+
+        /**
+         * Account the vertex buffers of this mesh against the given budget, which may
+         * evict them while this mesh is not rendered. {@link MeshMemoryBudget#shared()} by default
+         */
+        public Builder memoryBudget(MeshMemoryBudget memoryBudget) {
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        /**
+         * Deflate the retained section geometry of this mesh onto the heap whenever
+         * its memory budget evicts it, freeing its native memory until it is rendered
+         * again - at the cost of inflating it before the next merge
+         */
+        public Builder compressEvictedGeometry() {
+            this.compressEvictedGeometry = true;
+            return this;
+        }
+
+        /**
+         * Keep the built geometry of this mesh in the given cache, and load it from
+         * there instead of tessellating it whenever the contents of the mesh's
+         * volume match a cached build. Section contents are hashed on every
+         * build to find the cached mesh, which costs some extra time
+         * when the cache misses
+         */
+        public Builder meshCache(MeshCache meshCache) {
+            this.meshCache = meshCache;
+            return this;
+        }
+
+        /**
+         * Set how far the view position passed to {@link WorldMesh#resortTranslucency(Vec3d)}
+         * has to move before the translucent quads are sorted again, {@code 1} block by default
+         */
+        public Builder translucencyResortDistance(double resortDistance) {
+            this.resortDistance = resortDistance;
+            return this;
+        }
+
+        /**
+         * Request every build of this mesh started through {@link WorldMesh#scheduleRebuild()}
+         * from the given scheduler, instead of running it on the main worker executor right away
+         *
+         * @param priority The priority of this mesh's builds, evaluated whenever the scheduler
+         *                 picks the next build. Higher values go first
+         */
+        public Builder scheduler(WorldMeshScheduler scheduler, DoubleSupplier priority) {
+            this.scheduler = scheduler;
+            this.buildPriority = priority;
+            return this;
+        }
+
         public Builder renderActions(Runnable startAction, Runnable endAction) {
             this.startAction = startAction;
             this.endAction = endAction;
             return this;
         }
 
+        /**
+         * Build a mesh which is not shared with anyone, see
+         * {@link WorldMeshRegistry} for building shared ones
+         */
         public WorldMesh build() {
-            BlockPos start = new BlockPos(Math.min(origin.getX(), end.getX()), Math.min(origin.getY(), end.getY()), Math.min(origin.getZ(), end.getZ()));
-            BlockPos target = new BlockPos(Math.max(origin.getX(), end.getX()), Math.max(origin.getY(), end.getY()), Math.max(origin.getZ(), end.getZ()));
+            BlockPos start = this.start();
+            BlockPos target = this.target();
+
+            return new WorldMesh(world, start, target, cull, useGlobalNeighbors, greedyMeshing, compactVertices, levelFactors, freezeEntities, progressive, sectionExecutor, bufferPool, uploadQueue, memoryBudget, compressEvictedGeometry, meshCache, resortDistance, scheduler, buildPriority, startAction, endAction, entitySupplier);
+        }
+
+        WorldMeshRegistry.SharingKey sharingKey(long contentVersion) {
+            return new WorldMeshRegistry.SharingKey(
+                    new WorldMeshRegistry.Identity(this.world),
+                    this.start(),
+                    this.target(),
+                    this.cull,
+                    this.useGlobalNeighbors,
+                    this.greedyMeshing,
+                    this.compactVertices,
+                    Arrays.stream(this.levelFactors).boxed().toList(),
+                    this.freezeEntities,
+                    new WorldMeshRegistry.Identity(this.startAction),
+                    new WorldMeshRegistry.Identity(this.endAction),
+                    contentVersion
+            );
+        }
+
+        private BlockPos start() {
+            return new BlockPos(Math.min(origin.getX(), end.getX()), Math.min(origin.getY(), end.getY()), Math.min(origin.getZ(), end.getZ()));
+        }
 
-            return new WorldMesh(world, start, target, cull, useGlobalNeighbors, freezeEntities, startAction, endAction, entitySupplier);
+        private BlockPos target() {
+            return new BlockPos(Math.max(origin.getX(), end.getX()), Math.max(origin.getY(), end.getY()), Math.max(origin.getZ(), end.getZ()));
         }
     }
 
@@ -504,6 +1454,11 @@ public class WorldMesh {
         BUILDING(true, false),
         REBUILDING(true, true),
         READY(false, true),
+        /**
+         * The {@link MeshMemoryBudget} of the mesh released its vertex buffers. Rendering
+         * it draws nothing, but restores them in the background
+         */
+        EVICTED(false, true),
         CORRUPT(false, false);
 
         public final boolean isBuildStage;
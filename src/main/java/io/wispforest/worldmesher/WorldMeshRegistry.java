@@ -0,0 +1,157 @@
+package io.wispforest.worldmesher;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out shared, reference-counted handles to world meshes, so that the same volume
+ * shown in several places at once - say a preview, a hologram and a tooltip - is only
+ * built, uploaded and kept in memory once. Meshes are shared between all builders
+ * which agree on the world, the volume, every option affecting the tessellated
+ * geometry and their render actions, as well as on a caller-supplied content version
+ * <p>
+ * Everything else - the entity supplier, executors, pools, caches and scheduling - is
+ * taken from whichever builder created the mesh. The mesh is reset once the last
+ * handle to it is closed, until then its holders must not reset it themselves
+ */
+public final class WorldMeshRegistry {
+
+    private static final WorldMeshRegistry SHARED = new WorldMeshRegistry();
+
+    private final Map<SharingKey, Entry> meshes = new HashMap<>();
+
+    /**
+     * @return The registry shared by everyone who does not need their own
+     */
+    public static WorldMeshRegistry shared() {
+        return SHARED;
+    }
+
+    /**
+     * Acquire a handle to the mesh the given builder describes, at content version {@code 0}
+     *
+     * @see #acquire(WorldMesh.Builder, long)
+     */
+    public Handle acquire(WorldMesh.Builder builder) {
+        return this.acquire(builder, 0);
+    }
+
+    /**
+     * Acquire a handle to the mesh the given builder describes, building it if
+     * no handle to an identical one is currently open. Whoever acquires a mesh
+     * which is still building shares that build instead of starting another
+     *
+     * @param contentVersion A version of the contents of the mesh's volume which the caller bumps whenever
+     *                       they change in a way the mesh should not pick up through {@link WorldMesh#scheduleRebuild()},
+     *                       meshes of different versions are never shared
+     */
+    public synchronized Handle acquire(WorldMesh.Builder builder, long contentVersion) {
+        var key = builder.sharingKey(contentVersion);
+
+        var entry = this.meshes.get(key);
+        if (entry == null) {
+            entry = new Entry(key, builder.build());
+            this.meshes.put(key, entry);
+        }
+
+        entry.references++;
+        return new Handle(entry);
+    }
+
+    /**
+     * @return How many distinct meshes currently have open handles
+     */
+    public synchronized int meshCount() {
+        return this.meshes.size();
+    }
+
+    private void release(Entry entry) {
+        synchronized (this) {
+            if (--entry.references > 0) return;
+            this.meshes.remove(entry.key);
+        }
+
+        // releasing vertex buffers has to happen on the render thread
+        if (RenderSystem.isOnRenderThread()) entry.mesh.reset();
+        else RenderSystem.recordRenderCall(entry.mesh::reset);
+    }
+
+    /**
+     * One reference to a shared mesh, which is released when closed
+     */
+    public final class Handle implements AutoCloseable {
+
+        private final Entry entry;
+        private volatile boolean closed = false;
+
+        private Handle(Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * @return The shared mesh this handle refers to
+         * @throws IllegalStateException If this handle was already closed
+         */
+        public WorldMesh mesh() {
+            if (this.closed) throw new IllegalStateException("World mesh handle was already closed");
+            return this.entry.mesh;
+        }
+
+        /**
+         * @return How many open handles currently refer to the same mesh as this one
+         */
+        public int references() {
+            synchronized (WorldMeshRegistry.this) {
+                return this.entry.references;
+            }
+        }
+
+        /**
+         * Release this reference to the mesh, resetting it if it was the last one.
+         * Closing a handle more than once has no effect
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (this.closed) return;
+                this.closed = true;
+            }
+
+            WorldMeshRegistry.this.release(this.entry);
+        }
+    }
+
+    private static final class Entry {
+
+        private final SharingKey key;
+        private final WorldMesh mesh;
+        private int references = 0;
+
+        private Entry(SharingKey key, WorldMesh mesh) {
+            this.key = key;
+            this.mesh = mesh;
+        }
+    }
+
+    /**
+     * Everything two builders have to agree on to share a mesh. The world and render
+     * actions are compared by identity, the rest by value
+     */
+    record SharingKey(Identity world, BlockPos origin, BlockPos end, boolean cull, boolean useGlobalNeighbors, boolean greedyMeshing, boolean compactVertices, List<Integer> levelFactors, boolean freezeEntities, Identity startAction, Identity endAction, long contentVersion) {}
+
+    record Identity(Object value) {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Identity other && other.value == this.value;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this.value);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package io.wispforest.worldmesher;
+
+import it.unimi.dsi.fastutil.objects.Reference2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Reference2DoubleMaps;
+import it.unimi.dsi.fastutil.objects.Reference2DoubleOpenHashMap;
+import net.minecraft.util.Util;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Decides which of many meshes gets to build next. At most a fixed amount of builds
+ * run at the same time, every other requested build waits in a queue ordered by
+ * a caller-supplied priority - for example whether the mesh is on screen, or
+ * how close it is to the viewer
+ * <p>
+ * Priorities are evaluated each time builds are picked, so they may change while a
+ * mesh is waiting. They are never evaluated while the scheduler is locked, so they may
+ * do real work or even call back into the scheduler. To keep low-priority meshes from starving,
+ * every second spent waiting raises the effective priority of a build by {@link #agingPerSecond()}
+ * <p>
+ * A mesh never builds twice at the same time - a request for a mesh which is
+ * already building waits in the queue until that build is done, without
+ * taking up a second one of the concurrent builds
+ * <p>
+ * Builds rejected because the queue is full are not lost - they are deferred, and
+ * queued again as soon as the queue has room, keeping the time they were first requested at
+ */
+public final class WorldMeshScheduler {
+
+    private static final WorldMeshScheduler SHARED = new WorldMeshScheduler(Math.max(1, Runtime.getRuntime().availableProcessors() / 4), 256, 1, Util.getMainWorkerExecutor());
+
+    private final int maxConcurrentBuilds;
+    private final int maxQueuedBuilds;
+    private final double agingPerSecond;
+    private final Executor executor;
+
+    // pending builds, at most one per mesh
+    private final Map<WorldMesh, PendingBuild> queue = new LinkedHashMap<>();
+    // rejected builds waiting for the queue to have room, at most one per mesh
+    private final Map<WorldMesh, PendingBuild> deferred = new LinkedHashMap<>();
+    // meshes whose build was started by this scheduler and has not completed yet
+    private final Set<WorldMesh> running = new HashSet<>();
+
+    private long completedBuilds = 0;
+    private long rejectedBuilds = 0;
+    private long dispatchedBuilds = 0;
+    private long totalWaitNanos = 0;
+    private long maxWaitNanos = 0;
+
+    /**
+     * @param maxConcurrentBuilds How many builds may run at the same time
+     * @param maxQueuedBuilds     How many builds may wait at the same time - once the queue is full,
+     *                            the build with the lowest priority is rejected and deferred
+     * @param agingPerSecond      How much the effective priority of a build grows per second it waits
+     * @param executor            The executor builds are run on
+     */
+    public WorldMeshScheduler(int maxConcurrentBuilds, int maxQueuedBuilds, double agingPerSecond, Executor executor) {
+        if (maxConcurrentBuilds < 1) throw new IllegalArgumentException("At least one build must be able to run");
+        if (maxQueuedBuilds < 1) throw new IllegalArgumentException("At least one build must be able to wait");
+
+        this.maxConcurrentBuilds = maxConcurrentBuilds;
+        this.maxQueuedBuilds = maxQueuedBuilds;
+        this.agingPerSecond = agingPerSecond;
+        this.executor = executor;
+    }
+
+    public WorldMeshScheduler(int maxConcurrentBuilds) {
+        this(maxConcurrentBuilds, 256, 1, Util.getMainWorkerExecutor());
+    }
+
+    /**
+     * @return The scheduler shared by all meshes which were given one without
+     * creating their own, running up to a quarter as many builds as
+     * there are processors on the main worker executor
+     */
+    public static WorldMeshScheduler shared() {
+        return SHARED;
+    }
+
+    /**
+     * Request a rebuild of the given mesh. If the mesh is already waiting, its
+     * existing request is kept and only its priority is replaced. If it is
+     * building, the request is started once that build completed
+     *
+     * @param priority Evaluated whenever the next build is picked, higher values go first
+     * @return A future completing once the requested build is finished. It completes with a
+     * {@link RejectedExecutionException} if the queue is full and this build has the lowest priority,
+     * or is displaced by one with a higher priority later on. The build is then deferred, and
+     * still runs once the queue has room again
+     */
+    public CompletableFuture<Void> schedule(WorldMesh mesh, DoubleSupplier priority) {
+        CompletableFuture<Void> future;
+        PendingBuild rejected = null;
+
+        // priorities are evaluated before locking. only a full queue
+        // needs those of the waiting builds, to find the lowest one
+        double requestedPriority = priority.getAsDouble();
+        var priorities = this.queueDepth() >= this.maxQueuedBuilds ? this.priorities() : Reference2DoubleMaps.<PendingBuild>emptyMap();
+
+        synchronized (this) {
+            var pending = this.queue.get(mesh);
+            if (pending != null) {
+                pending.priority = priority;
+                return pending.future;
+            }
+
+            // a new request for a deferred mesh replaces
+            // its deferred build, but keeps its age
+            var deferred = this.deferred.remove(mesh);
+            pending = new PendingBuild(mesh, priority, deferred != null ? deferred.queuedAt : System.nanoTime());
+            future = pending.future;
+
+            if (this.queue.size() >= this.maxQueuedBuilds) {
+                long now = System.nanoTime();
+                var lowest = this.pick(false, now, priorities);
+                if (lowest != null && this.effectivePriority(lowest, priorities.getDouble(lowest), now) < this.effectivePriority(pending, requestedPriority, now)) {
+                    this.queue.remove(lowest.mesh);
+                    this.queue.put(mesh, pending);
+                    rejected = lowest;
+                } else {
+                    rejected = pending;
+                }
+
+                this.rejectedBuilds++;
+                this.deferred.put(rejected.mesh, new PendingBuild(rejected.mesh, rejected.priority, rejected.queuedAt));
+            } else {
+                this.queue.put(mesh, pending);
+            }
+        }
+
+        if (rejected != null) rejected.future.completeExceptionally(new RejectedExecutionException("World mesh build queue is full"));
+
+        this.dispatch();
+        return future;
+    }
+
+    /**
+     * Drop the waiting or deferred build of the given mesh, if there is
+     * one. Its future completes with a {@link CancellationException}
+     */
+    public void cancel(WorldMesh mesh) {
+        PendingBuild pending;
+        synchronized (this) {
+            pending = this.queue.remove(mesh);
+            this.deferred.remove(mesh);
+        }
+
+        if (pending != null) pending.future.completeExceptionally(new CancellationException("World mesh build was cancelled"));
+    }
+
+    /**
+     * @return A snapshot of the current queue and the wait times of all builds started so far
+     */
+    public synchronized Metrics metrics() {
+        return new Metrics(
+                this.queue.size(),
+                this.deferred.size(),
+                this.running.size(),
+                this.completedBuilds,
+                this.rejectedBuilds,
+                this.dispatchedBuilds == 0 ? 0 : this.totalWaitNanos / (double) this.dispatchedBuilds / 1e6,
+                this.maxWaitNanos / 1e6
+        );
+    }
+
+    /**
+     * @return How many builds are currently waiting
+     */
+    public synchronized int queueDepth() {
+        return this.queue.size();
+    }
+
+    /**
+     * @return How many rejected builds are waiting for the queue to have room
+     */
+    public synchronized int deferredBuilds() {
+        return this.deferred.size();
+    }
+
+    public int maxConcurrentBuilds() {
+        return this.maxConcurrentBuilds;
+    }
+
+    public double agingPerSecond() {
+        return this.agingPerSecond;
+    }
+
+    private void dispatch() {
+        var dispatched = new ArrayList<PendingBuild>();
+
+        // builds queued after this snapshot are not picked here,
+        // but by the dispatch which follows queueing them
+        var priorities = this.priorities();
+
+        synchronized (this) {
+            long now = System.nanoTime();
+            this.requeueDeferred();
+
+            while (this.running.size() < this.maxConcurrentBuilds) {
+                var next = this.pick(true, now, priorities);
+                if (next == null) break;
+
+                this.queue.remove(next.mesh);
+
+                long waitNanos = now - next.queuedAt;
+                this.totalWaitNanos += waitNanos;
+                this.maxWaitNanos = Math.max(this.maxWaitNanos, waitNanos);
+                this.dispatchedBuilds++;
+                this.running.add(next.mesh);
+
+                dispatched.add(next);
+                this.requeueDeferred();
+            }
+        }
+
+        // meshes are only ever called without holding the lock of this scheduler,
+        // since they may call back into it. they in turn complete their build futures
+        // without holding their own lock, so the callback below may start builds of other meshes
+        for (var build : dispatched) {
+            CompletableFuture<Void> buildFuture;
+            try {
+                buildFuture = build.mesh.scheduleRebuild(this.executor);
+            } catch (Throwable throwable) {
+                buildFuture = CompletableFuture.failedFuture(throwable);
+            }
+
+            buildFuture.whenComplete((unused, throwable) -> {
+                synchronized (this) {
+                    this.running.remove(build.mesh);
+                    this.completedBuilds++;
+                }
+
+                if (throwable == null) build.future.complete(null);
+                else build.future.completeExceptionally(throwable);
+
+                this.dispatch();
+            });
+        }
+    }
+
+    /**
+     * Move deferred builds back into the queue, oldest request first, for as long as it has room
+     */
+    private void requeueDeferred() {
+        var iterator = this.deferred.values().iterator();
+        while (iterator.hasNext() && this.queue.size() < this.maxQueuedBuilds) {
+            var pending = iterator.next();
+            iterator.remove();
+
+            this.queue.put(pending.mesh, pending);
+        }
+    }
+
+    /**
+     * Evaluate the priority of every waiting and deferred build. Must
+     * not be called while holding the lock of this scheduler
+     */
+    private Reference2DoubleMap<PendingBuild> priorities() {
+        var builds = new ArrayList<PendingBuild>();
+        synchronized (this) {
+            builds.addAll(this.queue.values());
+            builds.addAll(this.deferred.values());
+        }
+
+        var priorities = new Reference2DoubleOpenHashMap<PendingBuild>(builds.size());
+        for (var build : builds) priorities.put(build, build.priority.getAsDouble());
+
+        return priorities;
+    }
+
+    /**
+     * Find the waiting build with the highest or lowest effective priority, among those
+     * whose priority was evaluated. When picking the highest, builds of meshes which
+     * are still building are skipped. Builds with the same priority are picked
+     * in the order they were requested in
+     */
+    private @Nullable PendingBuild pick(boolean highest, long now, Reference2DoubleMap<PendingBuild> priorities) {
+        PendingBuild picked = null;
+        double pickedPriority = 0;
+
+        for (var pending : this.queue.values()) {
+            if (!priorities.containsKey(pending)) continue;
+            if (highest && this.running.contains(pending.mesh)) continue;
+
+            double priority = this.effectivePriority(pending, priorities.getDouble(pending), now);
+            if (picked == null || (highest ? priority > pickedPriority : priority < pickedPriority)) {
+                picked = pending;
+                pickedPriority = priority;
+            }
+        }
+
+        return picked;
+    }
+
+    private double effectivePriority(PendingBuild pending, double priority, long now) {
+        return priority + (now - pending.queuedAt) / 1e9 * this.agingPerSecond;
+    }
+
+    /**
+     * @param queuedBuilds       How many builds are waiting
+     * @param deferredBuilds     How many rejected builds are waiting for the queue to have room
+     * @param runningBuilds      How many builds are running
+     * @param completedBuilds    How many builds finished, successfully or not
+     * @param rejectedBuilds     How many builds were rejected because the queue was full
+     * @param averageWaitMillis  How long builds waited on average before being started
+     * @param maxWaitMillis      The longest time any build waited before being started
+     */
+    public record Metrics(int queuedBuilds, int deferredBuilds, int runningBuilds, long completedBuilds, long rejectedBuilds, double averageWaitMillis, double maxWaitMillis) {}
+
+    private static final class PendingBuild {
+
+        final WorldMesh mesh;
+        final long queuedAt;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        volatile DoubleSupplier priority;
+
+        PendingBuild(WorldMesh mesh, DoubleSupplier priority, long queuedAt) {
+            this.mesh = mesh;
+            this.priority = priority;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package io.wispforest.worldmesher;
+
+import io.wispforest.worldmesher.renderers.WorldMesherRenderLayers;
+import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.rendering.v1.CoreShaderRegistrationCallback;
+import net.minecraft.util.Identifier;
+
+public class WorldMesherClient implements ClientModInitializer {
+
+    @Override
+    public void onInitializeClient() {
+        CoreShaderRegistrationCallback.EVENT.register(context -> {
+            context.register(new Identifier("worldmesher", "rendertype_greedy"), WorldMesherRenderLayers.GREEDY_FORMAT, WorldMesherRenderLayers::setGreedyProgram);
+
+            for (int i = 0; i < WorldMesherRenderLayers.COMPACT_PROGRAMS.size(); i++) {
+                final int program = i;
+                context.register(new Identifier("worldmesher", WorldMesherRenderLayers.COMPACT_PROGRAMS.get(i)), WorldMesherRenderLayers.COMPACT_FORMAT, shaderProgram -> WorldMesherRenderLayers.setCompactProgram(program, shaderProgram));
+            }
+        });
+
+        ClientTickEvents.END_CLIENT_TICK.register(client -> EntityCapture.tick());
+    }
+}
@@ -0,0 +1,356 @@
+package io.wispforest.worldmesher;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.fluid.FluidState;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.world.BlockRenderView;
+import net.minecraft.world.LightType;
+import net.minecraft.world.World;
+import net.minecraft.world.biome.ColorResolver;
+import net.minecraft.world.chunk.ChunkNibbleArray;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.chunk.light.LightingProvider;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable copy of the block states, light levels and block entities
+ * around a set of mesh sections, so that tessellation can run on any thread
+ * without touching the live world. Every captured section is copied by
+ * duplicating its palette and light arrays instead of walking its blocks
+ * <p>
+ * Only biome colors and directional brightness are still delegated to the
+ * source world, just like vanilla's own chunk render regions do
+ */
+public final class WorldSnapshot implements BlockRenderView {
+
+    private static final BlockState AIR = Blocks.AIR.getDefaultState();
+
+    private final BlockRenderView world;
+
+    private final int minSectionX, minSectionY, minSectionZ;
+    private final int sizeX, sizeY, sizeZ;
+    private final @Nullable Section[] sections;
+    private final Long2ObjectMap<BlockEntity> blockEntities = new Long2ObjectOpenHashMap<>();
+
+    private WorldSnapshot(BlockRenderView world, int minSectionX, int minSectionY, int minSectionZ, int maxSectionX, int maxSectionY, int maxSectionZ) {
+        this.world = world;
+
+        this.minSectionX = minSectionX;
+        this.minSectionY = minSectionY;
+        this.minSectionZ = minSectionZ;
+
+        this.sizeX = maxSectionX - minSectionX + 1;
+        this.sizeY = maxSectionY - minSectionY + 1;
+        this.sizeZ = maxSectionZ - minSectionZ + 1;
+
+        this.sections = new Section[this.sizeX * this.sizeY * this.sizeZ];
+    }
+
+    /**
+     * Capture everything required for tessellating the given mesh sections,
+     * including a one block margin around each of them
+     * <p>
+     * If the world is a {@link World}, this must run on the thread that owns it
+     */
+    static WorldSnapshot capture(BlockRenderView world, Collection<MeshSection> meshSections) {
+        var worldSections = new LongOpenHashSet();
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+
+        for (var meshSection : meshSections) {
+            var min = meshSection.min().add(-1, -1, -1);
+            var max = meshSection.max().add(1, 1, 1);
+
+            minX = Math.min(minX, min.getX());
+            minY = Math.min(minY, min.getY());
+            minZ = Math.min(minZ, min.getZ());
+            maxX = Math.max(maxX, max.getX());
+            maxY = Math.max(maxY, max.getY());
+            maxZ = Math.max(maxZ, max.getZ());
+
+            for (int sectionX = ChunkSectionPos.getSectionCoord(min.getX()); sectionX <= ChunkSectionPos.getSectionCoord(max.getX()); sectionX++) {
+                for (int sectionY = ChunkSectionPos.getSectionCoord(min.getY()); sectionY <= ChunkSectionPos.getSectionCoord(max.getY()); sectionY++) {
+                    for (int sectionZ = ChunkSectionPos.getSectionCoord(min.getZ()); sectionZ <= ChunkSectionPos.getSectionCoord(max.getZ()); sectionZ++) {
+                        worldSections.add(ChunkSectionPos.asLong(sectionX, sectionY, sectionZ));
+                    }
+                }
+            }
+        }
+
+        if (worldSections.isEmpty()) return new WorldSnapshot(world, 0, 0, 0, -1, -1, -1);
+
+        var snapshot = new WorldSnapshot(
+                world,
+                ChunkSectionPos.getSectionCoord(minX), ChunkSectionPos.getSectionCoord(minY), ChunkSectionPos.getSectionCoord(minZ),
+                ChunkSectionPos.getSectionCoord(maxX), ChunkSectionPos.getSectionCoord(maxY), ChunkSectionPos.getSectionCoord(maxZ)
+        );
+
+        var blockMin = new BlockPos(minX, minY, minZ);
+        var blockMax = new BlockPos(maxX, maxY, maxZ);
+
+        var iterator = worldSections.iterator();
+        while (iterator.hasNext()) {
+            long sectionPos = iterator.nextLong();
+
+            var section = world instanceof World realWorld
+                    ? captureSection(realWorld, sectionPos)
+                    : sampleSection(world, sectionPos, blockMin, blockMax);
+
+            snapshot.sections[snapshot.index(ChunkSectionPos.unpackX(sectionPos), ChunkSectionPos.unpackY(sectionPos), ChunkSectionPos.unpackZ(sectionPos))] = section;
+        }
+
+        snapshot.captureBlockEntities(blockMin, blockMax);
+        return snapshot;
+    }
+
+    private static Section captureSection(World world, long sectionPos) {
+        int sectionX = ChunkSectionPos.unpackX(sectionPos), sectionY = ChunkSectionPos.unpackY(sectionPos), sectionZ = ChunkSectionPos.unpackZ(sectionPos);
+
+        PalettedContainer<BlockState> blockStates = null;
+        if (sectionY >= world.getBottomSectionCoord() && sectionY < world.getTopSectionCoord()) {
+            var chunkSection = world.getChunk(sectionX, sectionZ).getSection(world.sectionCoordToIndex(sectionY));
+            if (!chunkSection.isEmpty()) blockStates = chunkSection.getBlockStateContainer().copy();
+        }
+
+        var lightingProvider = world.getLightingProvider();
+        var chunkSectionPos = ChunkSectionPos.from(sectionX, sectionY, sectionZ);
+
+        var blockLight = lightingProvider.get(LightType.BLOCK).getLightSection(chunkSectionPos);
+        blockLight = blockLight != null ? blockLight.copy() : new ChunkNibbleArray();
+
+        var skyLight = lightingProvider.get(LightType.SKY).getLightSection(chunkSectionPos);
+        if (skyLight != null) {
+            skyLight = skyLight.copy();
+        } else {
+            // sections without sky light data inherit it from the nearest
+            // section above them, so each column is uniform - this needs
+            // one lookup per column instead of one per block
+            skyLight = new ChunkNibbleArray();
+            if (world.getDimension().hasSkyLight()) {
+                var pos = new BlockPos.Mutable();
+                for (int x = 0; x < 16; x++) {
+                    for (int z = 0; z < 16; z++) {
+                        int light = lightingProvider.get(LightType.SKY).getLightLevel(pos.set(
+                                ChunkSectionPos.getBlockCoord(sectionX) + x,
+                                ChunkSectionPos.getBlockCoord(sectionY),
+                                ChunkSectionPos.getBlockCoord(sectionZ) + z
+                        ));
+                        if (light == 0) continue;
+
+                        for (int y = 0; y < 16; y++) {
+                            skyLight.set(x, y, z, light);
+                        }
+                    }
+                }
+            }
+        }
+
+        return new Section(blockStates, blockLight, skyLight);
+    }
+
+    private static Section sampleSection(BlockRenderView world, long sectionPos, BlockPos blockMin, BlockPos blockMax) {
+        int baseX = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackX(sectionPos));
+        int baseY = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackY(sectionPos));
+        int baseZ = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackZ(sectionPos));
+
+        var blockStates = new PalettedContainer<>(Block.STATE_IDS, AIR, PalettedContainer.PaletteProvider.BLOCK_STATE);
+        var blockLight = new ChunkNibbleArray();
+        var skyLight = new ChunkNibbleArray();
+
+        // arbitrary views expose no sections to copy, so only
+        // sample the blocks which can actually be looked up
+        var min = new BlockPos(Math.max(baseX, blockMin.getX()), Math.max(baseY, blockMin.getY()), Math.max(baseZ, blockMin.getZ()));
+        var max = new BlockPos(Math.min(baseX + 15, blockMax.getX()), Math.min(baseY + 15, blockMax.getY()), Math.min(baseZ + 15, blockMax.getZ()));
+
+        for (var pos : BlockPos.iterate(min, max)) {
+            int x = pos.getX() & 15, y = pos.getY() & 15, z = pos.getZ() & 15;
+
+            var state = world.getBlockState(pos);
+            if (!state.isAir()) blockStates.set(x, y, z, state);
+
+            blockLight.set(x, y, z, world.getLightLevel(LightType.BLOCK, pos));
+            skyLight.set(x, y, z, world.getLightLevel(LightType.SKY, pos));
+        }
+
+        return new Section(blockStates, blockLight, skyLight);
+    }
+
+    private void captureBlockEntities(BlockPos blockMin, BlockPos blockMax) {
+        forEachBlockEntity(this.world, blockMin, blockMax, (pos, blockEntity) -> {
+            if (this.sectionAt(pos) == null) return;
+            this.blockEntities.put(pos.asLong(), blockEntity);
+        });
+    }
+
+    /**
+     * Find every block entity between the given corners. Live worlds are read from the
+     * block entity maps of the chunks involved, any other view is checked block by block
+     * - which means this must be called on the client thread for live worlds
+     */
+    static void forEachBlockEntity(BlockRenderView world, BlockPos blockMin, BlockPos blockMax, BiConsumer<BlockPos, BlockEntity> action) {
+        if (world instanceof World realWorld) {
+            var bounds = BlockBox.create(blockMin, blockMax);
+            for (int chunkX = ChunkSectionPos.getSectionCoord(blockMin.getX()); chunkX <= ChunkSectionPos.getSectionCoord(blockMax.getX()); chunkX++) {
+                for (int chunkZ = ChunkSectionPos.getSectionCoord(blockMin.getZ()); chunkZ <= ChunkSectionPos.getSectionCoord(blockMax.getZ()); chunkZ++) {
+                    realWorld.getChunk(chunkX, chunkZ).getBlockEntities().forEach((pos, blockEntity) -> {
+                        if (bounds.contains(pos)) action.accept(pos, blockEntity);
+                    });
+                }
+            }
+        } else {
+            for (var pos : BlockPos.iterate(blockMin, blockMax)) {
+                if (!world.getBlockState(pos).hasBlockEntity()) continue;
+
+                var blockEntity = world.getBlockEntity(pos);
+                if (blockEntity != null) action.accept(pos.toImmutable(), blockEntity);
+            }
+        }
+    }
+
+    private int index(int sectionX, int sectionY, int sectionZ) {
+        return ((sectionZ - this.minSectionZ) * this.sizeY + (sectionY - this.minSectionY)) * this.sizeX + (sectionX - this.minSectionX);
+    }
+
+    private @Nullable Section sectionAt(BlockPos pos) {
+        return this.sectionAt(ChunkSectionPos.getSectionCoord(pos.getX()), ChunkSectionPos.getSectionCoord(pos.getY()), ChunkSectionPos.getSectionCoord(pos.getZ()));
+    }
+
+    private @Nullable Section sectionAt(int sectionX, int sectionY, int sectionZ) {
+        sectionX -= this.minSectionX;
+        sectionY -= this.minSectionY;
+        sectionZ -= this.minSectionZ;
+
+        if (sectionX < 0 || sectionX >= this.sizeX || sectionY < 0 || sectionY >= this.sizeY || sectionZ < 0 || sectionZ >= this.sizeZ) {
+            return null;
+        }
+
+        return this.sections[(sectionZ * this.sizeY + sectionY) * this.sizeX + sectionX];
+    }
+
+    /**
+     * Inspect the palette of a captured section to find whether it
+     * consists of only a single block state, without looking at its blocks
+     *
+     * @param sectionPos The packed {@link ChunkSectionPos} of the section
+     * @return The state filling the entire section, or {@code null}
+     * if the section may contain more than one state
+     */
+    public @Nullable BlockState uniformState(long sectionPos) {
+        var section = this.sectionAt(ChunkSectionPos.unpackX(sectionPos), ChunkSectionPos.unpackY(sectionPos), ChunkSectionPos.unpackZ(sectionPos));
+        if (section == null) return null;
+        if (section.blockStates == null) return AIR;
+
+        var firstState = section.blockStates.get(0, 0, 0);
+        return section.blockStates.hasAny(state -> state != firstState) ? null : firstState;
+    }
+
+    /**
+     * Hash the block states and light of the given mesh section, including the layer
+     * of blocks around it which influences its culling and smooth lighting. Equal
+     * contents hash to the same value across sessions, as long as the registered
+     * block states do not change
+     */
+    public long contentHash(MeshSection section) {
+        long hash = section.pos();
+
+        for (int z = section.min().getZ() - 1; z <= section.max().getZ() + 1; z++) {
+            for (int y = section.min().getY() - 1; y <= section.max().getY() + 1; y++) {
+                for (int x = section.min().getX() - 1; x <= section.max().getX() + 1; x++) {
+                    var captured = this.sectionAt(ChunkSectionPos.getSectionCoord(x), ChunkSectionPos.getSectionCoord(y), ChunkSectionPos.getSectionCoord(z));
+
+                    int value;
+                    if (captured == null) {
+                        value = Block.STATE_IDS.getRawId(AIR) | this.getMaxLightLevel() << 28;
+                    } else {
+                        var state = captured.blockStates == null ? AIR : captured.blockStates.get(x & 15, y & 15, z & 15);
+                        value = Block.STATE_IDS.getRawId(state)
+                                | captured.blockLight.get(x & 15, y & 15, z & 15) << 24
+                                | captured.skyLight.get(x & 15, y & 15, z & 15) << 28;
+                    }
+
+                    hash = (hash ^ value) * 0x9E3779B97F4A7C15L;
+                }
+            }
+        }
+
+        return HashCommon.mix(hash);
+    }
+
+    /**
+     * @return Every captured block entity, keyed by its packed position
+     */
+    Long2ObjectMap<BlockEntity> blockEntities() {
+        return this.blockEntities;
+    }
+
+    @Override
+    public BlockState getBlockState(BlockPos pos) {
+        var section = this.sectionAt(pos);
+        if (section == null || section.blockStates == null) return AIR;
+
+        return section.blockStates.get(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15);
+    }
+
+    @Override
+    public FluidState getFluidState(BlockPos pos) {
+        return this.getBlockState(pos).getFluidState();
+    }
+
+    @Override
+    public @Nullable BlockEntity getBlockEntity(BlockPos pos) {
+        return this.blockEntities.get(pos.asLong());
+    }
+
+    @Override
+    public int getLightLevel(LightType type, BlockPos pos) {
+        var section = this.sectionAt(pos);
+        if (section == null) return type == LightType.SKY ? this.getMaxLightLevel() : 0;
+
+        return (type == LightType.SKY ? section.skyLight : section.blockLight).get(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15);
+    }
+
+    @Override
+    public int getBaseLightLevel(BlockPos pos, int ambientDarkness) {
+        return Math.max(this.getLightLevel(LightType.SKY, pos) - ambientDarkness, this.getLightLevel(LightType.BLOCK, pos));
+    }
+
+    @Override
+    public float getBrightness(Direction direction, boolean shaded) {
+        return this.world.getBrightness(direction, shaded);
+    }
+
+    @Override
+    public LightingProvider getLightingProvider() {
+        return this.world.getLightingProvider();
+    }
+
+    @Override
+    public int getColor(BlockPos pos, ColorResolver colorResolver) {
+        return this.world.getColor(pos, colorResolver);
+    }
+
+    @Override
+    public int getHeight() {
+        return this.world.getHeight();
+    }
+
+    @Override
+    public int getBottomY() {
+        return this.world.getBottomY();
+    }
+
+    private record Section(@Nullable PalettedContainer<BlockState> blockStates, ChunkNibbleArray blockLight, ChunkNibbleArray skyLight) {}
+}
@@ -0,0 +1,40 @@
+package io.wispforest.worldmesher.mixin;
+
+import io.wispforest.worldmesher.LightCache;
+import net.minecraft.block.BlockState;
+import net.minecraft.client.render.block.BlockModelRenderer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.BlockRenderView;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Redirect;
+
+/**
+ * Lets the calculators of world mesh tessellators read light and ambient occlusion
+ * brightness through their {@link LightCache} instead of vanilla's brightness cache,
+ * which is only enabled on chunk builder threads
+ */
+@Mixin(BlockModelRenderer.AmbientOcclusionCalculator.class)
+public class AmbientOcclusionCalculatorMixin {
+
+    @Redirect(method = "apply", at = @At(value = "INVOKE", target = "Lnet/minecraft/client/render/block/BlockModelRenderer$BrightnessCache;getInt(Lnet/minecraft/block/BlockState;Lnet/minecraft/world/BlockRenderView;Lnet/minecraft/util/math/BlockPos;)I"))
+    private int cachedLight(BlockModelRenderer.BrightnessCache brightnessCache, BlockState state, BlockRenderView world, BlockPos pos) {
+        if ((Object) this instanceof LightCache.Holder holder) {
+            var lightCache = holder.lightCache();
+            if (lightCache != null && lightCache.caches(world)) return lightCache.light(state, pos);
+        }
+
+        return brightnessCache.getInt(state, world, pos);
+    }
+
+    @Redirect(method = "apply", at = @At(value = "INVOKE", target = "Lnet/minecraft/client/render/block/BlockModelRenderer$BrightnessCache;getFloat(Lnet/minecraft/block/BlockState;Lnet/minecraft/world/BlockRenderView;Lnet/minecraft/util/math/BlockPos;)F"))
+    private float cachedAo(BlockModelRenderer.BrightnessCache brightnessCache, BlockState state, BlockRenderView world, BlockPos pos) {
+        if ((Object) this instanceof LightCache.Holder holder) {
+            var lightCache = holder.lightCache();
+            if (lightCache != null && lightCache.caches(world)) return lightCache.ao(state, pos);
+        }
+
+        return brightnessCache.getFloat(state, world, pos);
+    }
+
+}
@@ -3,6 +3,7 @@ package io.wispforest.worldmesher.mixin;
 import net.minecraft.client.render.BufferBuilder;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.gen.Accessor;
+import org.spongepowered.asm.mixin.gen.Invoker;
 
 import java.nio.ByteBuffer;
 
@@ -13,4 +14,19 @@ public interface BufferBuilderAccessor {
 
     @Accessor("buffer")
     void worldmesher$setBuffer(ByteBuffer buffer);
+
+    @Accessor("elementOffset")
+    int worldmesher$getElementOffset();
+
+    @Accessor("elementOffset")
+    void worldmesher$setElementOffset(int elementOffset);
+
+    @Accessor("vertexCount")
+    int worldmesher$getVertexCount();
+
+    @Accessor("vertexCount")
+    void worldmesher$setVertexCount(int vertexCount);
+
+    @Invoker("grow")
+    void worldmesher$grow(int size);
 }
@@ -0,0 +1,18 @@
+package io.wispforest.worldmesher.mixin;
+
+import io.wispforest.worldmesher.BudgetedUploadQueue;
+import net.minecraft.client.MinecraftClient;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(MinecraftClient.class)
+public class MinecraftClientMixin {
+
+    @Inject(method = "render", at = @At("HEAD"))
+    private void drainSharedUploadQueue(boolean tick, CallbackInfo ci) {
+        BudgetedUploadQueue.shared().drain();
+    }
+
+}
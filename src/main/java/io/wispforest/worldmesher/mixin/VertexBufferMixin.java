@@ -0,0 +1,33 @@
+package io.wispforest.worldmesher.mixin;
+
+import io.wispforest.worldmesher.SectionRanges;
+import net.minecraft.client.gl.VertexBuffer;
+import net.minecraft.client.render.VertexFormat;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Lets a world mesh limit the draw of a layer to the ranges of its visible
+ * sections, while the buffer still sets up its shader like it always does
+ */
+@Mixin(VertexBuffer.class)
+public abstract class VertexBufferMixin {
+
+    @Shadow
+    private VertexFormat.DrawMode drawMode;
+
+    @Shadow
+    protected abstract VertexFormat.IndexType getIndexType();
+
+    @Inject(method = "drawElements", at = @At("HEAD"), cancellable = true)
+    private void drawSectionRanges(CallbackInfo ci) {
+        if (!SectionRanges.limitingDraw()) return;
+
+        SectionRanges.drawLimited(this.drawMode.glMode, this.getIndexType());
+        ci.cancel();
+    }
+
+}
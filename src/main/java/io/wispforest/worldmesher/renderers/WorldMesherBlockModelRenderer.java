@@ -1,29 +1,69 @@
 package io.wispforest.worldmesher.renderers;
 
+import io.wispforest.worldmesher.LightCache;
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.color.block.BlockColors;
 import net.minecraft.client.render.VertexConsumer;
 import net.minecraft.client.render.WorldRenderer;
 import net.minecraft.client.render.block.BlockModelRenderer;
 import net.minecraft.client.render.model.BakedModel;
 import net.minecraft.client.render.model.BakedQuad;
 import net.minecraft.client.util.math.MatrixStack;
+import net.minecraft.util.crash.CrashException;
+import net.minecraft.util.crash.CrashReport;
+import net.minecraft.util.crash.CrashReportSection;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Direction;
 import net.minecraft.util.math.random.Random;
 import net.minecraft.world.BlockRenderView;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector3f;
 
+import java.nio.ByteOrder;
 import java.util.BitSet;
 import java.util.List;
 
 public class WorldMesherBlockModelRenderer extends BlockModelRenderer {
 
     private static final Direction[] DIRECTIONS = Direction.values();
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * Passed to {@link #setVisibleFaces(int)} when every face
+     * should be culled against the world while rendering
+     */
+    public static final int UNKNOWN_FACES = -1;
+
+    private final BlockColors colors;
     private byte cullingOverrides = 0;
+    private int visibleFaces = UNKNOWN_FACES;
+    private @Nullable FaceSink faceSink = null;
+
+    // Scratch state, reused for every block this renderer tessellates
+    private final float[] box = new float[DIRECTIONS.length * 2];
+    private final BitSet flags = new BitSet(3);
+    private final CachingAoCalculator ambientOcclusionCalculator = new CachingAoCalculator();
+    private final BlockPos.Mutable neighborPos = new BlockPos.Mutable();
+    private final BlockPos.Mutable edgePos = new BlockPos.Mutable();
+
+    // the block currently being rendered - quads of always drawn faces are
+    // lit from the edge position, but still belong to and are tinted at this one
+    private BlockPos blockPos = BlockPos.ORIGIN;
+
+    private final float[] brightness = new float[4];
+    private final int[] light = new int[4];
+    private final Vector3f vertexPos = new Vector3f();
+    private final Vector3f vertexNormal = new Vector3f();
 
     public WorldMesherBlockModelRenderer() {
-        super(MinecraftClient.getInstance().getBlockColors());
+        this(MinecraftClient.getInstance().getBlockColors());
+    }
+
+    public WorldMesherBlockModelRenderer(BlockColors colors) {
+        super(colors);
+        this.colors = colors;
     }
 
     public void setCullDirection(Direction direction, boolean alwaysDraw) {
@@ -35,24 +75,91 @@ public class WorldMesherBlockModelRenderer extends BlockModelRenderer {
         cullingOverrides = 0;
     }
 
+    /**
+     * Offer every quad this renderer emits to the given sink first, only emitting
+     * it into the vertex consumer if the sink does not accept it. Pass {@code null}
+     * to emit everything normally again
+     */
+    public void setFaceSink(@Nullable FaceSink faceSink) {
+        this.faceSink = faceSink;
+    }
+
+    /**
+     * Cull the faces of the next block by the given mask instead of testing them against
+     * the world, so that culled faces are skipped before their quads are even fetched
+     *
+     * @param visibleFaces One bit per {@link Direction#getId()} which is set if that face
+     *                     of the block is visible, or {@link #UNKNOWN_FACES}
+     */
+    public void setVisibleFaces(int visibleFaces) {
+        this.visibleFaces = visibleFaces;
+    }
+
+    /**
+     * Read the light and ambient occlusion brightness of smooth lit
+     * quads through the given cache, or from the world if {@code null}
+     */
+    public void setLightCache(@Nullable LightCache lightCache) {
+        this.ambientOcclusionCalculator.lightCache = lightCache;
+    }
+
     private boolean shouldAlwaysDraw(Direction direction) {
         return (cullingOverrides & (1 << direction.getId())) != 0;
     }
 
+    private boolean isKnownCulled(Direction direction) {
+        return this.visibleFaces != UNKNOWN_FACES && (this.visibleFaces & (1 << direction.getId())) == 0 && !shouldAlwaysDraw(direction);
+    }
+
+    private BlockPos lightingPos(BlockPos pos, Direction direction) {
+        return !shouldAlwaysDraw(direction) ? pos : this.edgePos.set(pos.getX(), pos.getY() + 500, pos.getZ());
+    }
+
+    /**
+     * Render the given model like {@link #render(BlockRenderView, BakedModel, BlockState, BlockPos, MatrixStack, VertexConsumer, boolean, Random, long, int)},
+     * except that whether to use ambient occlusion is passed in instead of being read from the
+     * client options for every block. Models which are not vanilla adapters still go through
+     * {@code render}, so that whichever Fabric API renderer is active can handle them
+     */
+    public void renderModel(BlockRenderView world, BakedModel model, BlockState state, BlockPos pos, MatrixStack matrices, VertexConsumer vertexConsumer, boolean cull, Random random, long seed, int overlay, boolean ambientOcclusion) {
+        if (!model.isVanillaAdapter()) {
+            this.render(world, model, state, pos, matrices, vertexConsumer, cull, random, seed, overlay);
+            return;
+        }
+
+        boolean smooth = ambientOcclusion && state.getLuminance() == 0 && model.useAmbientOcclusion();
+
+        var offset = state.getModelOffset(world, pos);
+        matrices.translate(offset.x, offset.y, offset.z);
+
+        try {
+            if (smooth) {
+                this.renderSmooth(world, model, state, pos, matrices, vertexConsumer, cull, random, seed, overlay);
+            } else {
+                this.renderFlat(world, model, state, pos, matrices, vertexConsumer, cull, random, seed, overlay);
+            }
+        } catch (Throwable throwable) {
+            CrashReport crashReport = CrashReport.create(throwable, "Tessellating block model in WorldMesher mesh");
+            CrashReportSection crashReportSection = crashReport.addElement("Block model being tessellated");
+            CrashReportSection.addBlockInfo(crashReportSection, world, pos, state);
+            crashReportSection.add("Using AO", smooth);
+            throw new CrashException(crashReport);
+        }
+    }
+
     @Override
     public void renderSmooth(BlockRenderView world, BakedModel model, BlockState state, BlockPos pos, MatrixStack matrices, VertexConsumer vertexConsumer, boolean cull, Random random, long seed, int overlay) {
-        float[] fs = new float[DIRECTIONS.length * 2];
-        BitSet bitSet = new BitSet(3);
-        BlockModelRenderer.AmbientOcclusionCalculator ambientOcclusionCalculator = new BlockModelRenderer.AmbientOcclusionCalculator();
-        BlockPos.Mutable mutable = pos.mutableCopy();
+        this.blockPos = pos;
 
         for (Direction direction : DIRECTIONS) {
+            if (cull && this.isKnownCulled(direction)) continue;
+
             random.setSeed(seed);
             List<BakedQuad> list = model.getQuads(state, direction, random);
             if (!list.isEmpty()) {
-                mutable.set(pos, direction);
-                if (!cull || shouldAlwaysDraw(direction) || Block.shouldDrawSide(state, world, pos, direction, mutable)) {
-                    this.renderQuadsSmooth(world, state, !shouldAlwaysDraw(direction) ? pos : pos.add(0, 500, 0), matrices, vertexConsumer, list, fs, bitSet, ambientOcclusionCalculator, overlay);
+                this.neighborPos.set(pos, direction);
+                if (!cull || this.visibleFaces != UNKNOWN_FACES || shouldAlwaysDraw(direction) || Block.shouldDrawSide(state, world, pos, direction, this.neighborPos)) {
+                    this.renderQuadsSmooth(world, state, this.lightingPos(pos, direction), matrices, vertexConsumer, list, this.box, this.flags, this.ambientOcclusionCalculator, overlay);
                 }
             }
         }
@@ -60,23 +167,25 @@ public class WorldMesherBlockModelRenderer extends BlockModelRenderer {
         random.setSeed(seed);
         List<BakedQuad> quads = model.getQuads(state, null, random);
         if (!quads.isEmpty()) {
-            this.renderQuadsSmooth(world, state, pos, matrices, vertexConsumer, quads, fs, bitSet, ambientOcclusionCalculator, overlay);
+            this.renderQuadsSmooth(world, state, pos, matrices, vertexConsumer, quads, this.box, this.flags, this.ambientOcclusionCalculator, overlay);
         }
 
     }
 
+    @Override
     public void renderFlat(BlockRenderView world, BakedModel model, BlockState state, BlockPos pos, MatrixStack matrices, VertexConsumer vertexConsumer, boolean cull, Random random, long seed, int overlay) {
-        BitSet bitSet = new BitSet(3);
-        BlockPos.Mutable mutable = pos.mutableCopy();
+        this.blockPos = pos;
 
         for (Direction direction : DIRECTIONS) {
+            if (cull && this.isKnownCulled(direction)) continue;
+
             random.setSeed(seed);
             List<BakedQuad> list = model.getQuads(state, direction, random);
             if (!list.isEmpty()) {
-                mutable.set(pos, direction);
-                if (!cull || shouldAlwaysDraw(direction) || Block.shouldDrawSide(state, world, pos, direction, mutable)) {
-                    int i = WorldRenderer.getLightmapCoordinates(world, state, mutable);
-                    this.renderQuadsFlat(world, state, !shouldAlwaysDraw(direction) ? pos : pos.add(0, 500, 0), i, overlay, false, matrices, vertexConsumer, list, bitSet);
+                this.neighborPos.set(pos, direction);
+                if (!cull || this.visibleFaces != UNKNOWN_FACES || shouldAlwaysDraw(direction) || Block.shouldDrawSide(state, world, pos, direction, this.neighborPos)) {
+                    int i = WorldRenderer.getLightmapCoordinates(world, state, this.neighborPos);
+                    this.renderQuadsFlat(world, state, this.lightingPos(pos, direction), i, overlay, false, matrices, vertexConsumer, list, this.flags);
                 }
             }
         }
@@ -84,9 +193,125 @@ public class WorldMesherBlockModelRenderer extends BlockModelRenderer {
         random.setSeed(seed);
         List<BakedQuad> list2 = model.getQuads(state, null, random);
         if (!list2.isEmpty()) {
-            this.renderQuadsFlat(world, state, pos, -1, overlay, true, matrices, vertexConsumer, list2, bitSet);
+            this.renderQuadsFlat(world, state, pos, -1, overlay, true, matrices, vertexConsumer, list2, this.flags);
         }
 
     }
 
+    // The two overrides below are the vanilla implementations, except that quads are emitted
+    // through emitQuad instead of VertexConsumer#quad, which allocates several arrays and
+    // vectors for every single quad. The emitted vertex data is exactly the same
+
+    @Override
+    protected void renderQuadsSmooth(BlockRenderView world, BlockState state, BlockPos pos, MatrixStack matrices, VertexConsumer vertexConsumer, List<BakedQuad> quads, float[] box, BitSet flags, BlockModelRenderer.AmbientOcclusionCalculator ambientOcclusionCalculator, int overlay) {
+        for (int i = 0; i < quads.size(); i++) {
+            var quad = quads.get(i);
+
+            this.getQuadDimensions(world, state, pos, quad.getVertexData(), quad.getFace(), box, flags);
+            ambientOcclusionCalculator.apply(world, state, pos, quad.getFace(), box, flags, quad.hasShade());
+
+            this.emitQuad(world, state, vertexConsumer, matrices.peek(), quad, ambientOcclusionCalculator.brightness, ambientOcclusionCalculator.light, overlay);
+        }
+    }
+
+    @Override
+    protected void renderQuadsFlat(BlockRenderView world, BlockState state, BlockPos pos, int light, int overlay, boolean useWorldLight, MatrixStack matrices, VertexConsumer vertexConsumer, List<BakedQuad> quads, BitSet flags) {
+        for (int i = 0; i < quads.size(); i++) {
+            var quad = quads.get(i);
+
+            if (useWorldLight) {
+                this.getQuadDimensions(world, state, pos, quad.getVertexData(), quad.getFace(), null, flags);
+                light = WorldRenderer.getLightmapCoordinates(world, state, flags.get(0) ? this.neighborPos.set(pos, quad.getFace()) : pos);
+            }
+
+            float brightness = world.getBrightness(quad.getFace(), quad.hasShade());
+
+            this.brightness[0] = this.brightness[1] = this.brightness[2] = this.brightness[3] = brightness;
+            this.light[0] = this.light[1] = this.light[2] = this.light[3] = light;
+
+            this.emitQuad(world, state, vertexConsumer, matrices.peek(), quad, this.brightness, this.light, overlay);
+        }
+    }
+
+    private void emitQuad(BlockRenderView world, BlockState state, VertexConsumer vertexConsumer, MatrixStack.Entry matrixEntry, BakedQuad quad, float[] brightness, int[] light, int overlay) {
+        float red = 1f, green = 1f, blue = 1f;
+        if (quad.hasColor()) {
+            int color = this.colors.getColor(state, world, this.blockPos, quad.getColorIndex());
+            red = (float) (color >> 16 & 0xFF) / 255f;
+            green = (float) (color >> 8 & 0xFF) / 255f;
+            blue = (float) (color & 0xFF) / 255f;
+        }
+
+        if (this.faceSink != null && this.faceSink.accept(this.blockPos, quad, red, green, blue, brightness, light)) return;
+
+        var face = quad.getFace().getVector();
+        matrixEntry.getNormalMatrix().transform(face.getX(), face.getY(), face.getZ(), this.vertexNormal);
+
+        var positionMatrix = matrixEntry.getPositionMatrix();
+        int[] vertexData = quad.getVertexData();
+
+        for (int vertex = 0; vertex < 4; vertex++) {
+            int offset = vertex * 8;
+
+            int packedColor = vertexData[offset + 3];
+            float vertexRed = (float) (colorByte(packedColor, 0)) / 255f;
+            float vertexGreen = (float) (colorByte(packedColor, 1)) / 255f;
+            float vertexBlue = (float) (colorByte(packedColor, 2)) / 255f;
+
+            positionMatrix.transformPosition(
+                    Float.intBitsToFloat(vertexData[offset]),
+                    Float.intBitsToFloat(vertexData[offset + 1]),
+                    Float.intBitsToFloat(vertexData[offset + 2]),
+                    this.vertexPos
+            );
+
+            vertexConsumer.vertex(
+                    this.vertexPos.x, this.vertexPos.y, this.vertexPos.z,
+                    vertexRed * brightness[vertex] * red, vertexGreen * brightness[vertex] * green, vertexBlue * brightness[vertex] * blue, 1f,
+                    Float.intBitsToFloat(vertexData[offset + 4]), Float.intBitsToFloat(vertexData[offset + 5]),
+                    overlay, light[vertex],
+                    this.vertexNormal.x, this.vertexNormal.y, this.vertexNormal.z
+            );
+        }
+    }
+
+    /**
+     * Read the byte at the given memory offset of a packed vertex
+     * color, just like vanilla does through a native-order buffer
+     */
+    public static int colorByte(int packedColor, int index) {
+        return (LITTLE_ENDIAN ? packedColor >> (index * 8) : packedColor >> (24 - index * 8)) & 0xFF;
+    }
+
+    /**
+     * The vanilla calculator, whose brightness lookups are redirected to
+     * its light cache by {@code AmbientOcclusionCalculatorMixin}
+     */
+    private static class CachingAoCalculator extends BlockModelRenderer.AmbientOcclusionCalculator implements LightCache.Holder {
+
+        private @Nullable LightCache lightCache = null;
+
+        @Override
+        public @Nullable LightCache lightCache() {
+            return this.lightCache;
+        }
+    }
+
+    @FunctionalInterface
+    public interface FaceSink {
+        /**
+         * Offered a quad right before it would be emitted, after culling
+         * and lighting have been applied
+         *
+         * @param pos        The position of the block the quad belongs to
+         * @param red        The red component of the quad's tint
+         * @param green      The green component of the quad's tint
+         * @param blue       The blue component of the quad's tint
+         * @param brightness The shading of each of the quad's vertices
+         * @param light      The packed light of each of the quad's vertices
+         * @return {@code true} if the sink takes care of the quad
+         * and it must not be emitted into the vertex consumer
+         */
+        boolean accept(BlockPos pos, BakedQuad quad, float red, float green, float blue, float[] brightness, int[] light);
+    }
 }
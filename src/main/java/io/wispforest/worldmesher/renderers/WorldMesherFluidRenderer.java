@@ -1,23 +1,42 @@
 package io.wispforest.worldmesher.renderers;
 
+import net.minecraft.client.render.OverlayTexture;
 import net.minecraft.client.render.VertexConsumer;
 import net.minecraft.client.render.block.FluidRenderer;
+import net.minecraft.client.texture.Sprite;
 import org.joml.Matrix4f;
+import org.joml.Vector3f;
 
 public class WorldMesherFluidRenderer extends FluidRenderer {
 
     private Matrix4f matrix;
+    private final Vector3f vertexPos = new Vector3f();
 
     public WorldMesherFluidRenderer(){
         onResourceReload();
     }
 
+    /**
+     * Create a fluid renderer using the given sprites instead of the
+     * ones from the client's block atlas, for use without a client
+     */
+    public WorldMesherFluidRenderer(Sprite waterStill, Sprite waterFlowing, Sprite waterOverlay, Sprite lavaStill, Sprite lavaFlowing) {
+        this.waterSprites[0] = waterStill;
+        this.waterSprites[1] = waterFlowing;
+        this.waterOverlaySprite = waterOverlay;
+        this.lavaSprites[0] = lavaStill;
+        this.lavaSprites[1] = lavaFlowing;
+    }
+
     public void setMatrix(Matrix4f matrix) {
         this.matrix = matrix;
     }
 
     @Override
     protected void vertex(VertexConsumer vertexConsumer, double x, double y, double z, float red, float green, float blue, float u, float v, int light) {
-        vertexConsumer.vertex(matrix, (float) x, (float) y, (float) z).color(red, green, blue, 1.0F).texture(u, v).light(light).normal(0.0F, 1.0F, 0.0F).next();
+        // transform into a reused vector and emit the whole vertex at once,
+        // VertexConsumer#vertex(Matrix4f, ...) allocates for every vertex
+        this.matrix.transformPosition((float) x, (float) y, (float) z, this.vertexPos);
+        vertexConsumer.vertex(this.vertexPos.x, this.vertexPos.y, this.vertexPos.z, red, green, blue, 1.0F, u, v, OverlayTexture.DEFAULT_UV, light, 0.0F, 1.0F, 0.0F);
     }
 }
@@ -0,0 +1,145 @@
+package io.wispforest.worldmesher.renderers;
+
+import com.google.common.collect.ImmutableMap;
+import net.minecraft.client.render.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The render layers and vertex formats WorldMesher uses on top of the vanilla block layers
+ */
+public final class WorldMesherRenderLayers extends RenderLayer {
+
+    /**
+     * The tile coordinate of a greedy vertex - whole numbers fall on
+     * block boundaries, the fractional part is the position inside the sprite
+     */
+    public static final VertexFormatElement TILE_ELEMENT = new VertexFormatElement(1, VertexFormatElement.ComponentType.FLOAT, VertexFormatElement.Type.UV, 2);
+
+    /**
+     * The format of merged faces. {@code UV0} is the minimum UV of the face's
+     * sprite and is the same on all four vertices of a quad, the shader
+     * adds the fractional part of {@code Tile} to it to repeat the sprite
+     */
+    public static final VertexFormat GREEDY_FORMAT = new VertexFormat(ImmutableMap.<String, VertexFormatElement>builder()
+            .put("Position", VertexFormats.POSITION_ELEMENT)
+            .put("Color", VertexFormats.COLOR_ELEMENT)
+            .put("UV0", VertexFormats.TEXTURE_ELEMENT)
+            .put("Tile", TILE_ELEMENT)
+            .put("UV2", VertexFormats.LIGHT_ELEMENT)
+            .build());
+
+    /**
+     * The format of compactly encoded block layers, see {@code CompactVertices} for how each
+     * element is encoded. Positions are relative to their section, whose index the
+     * fourth component holds - the shader resolves them against that
+     */
+    public static final VertexFormat COMPACT_FORMAT = new VertexFormat(ImmutableMap.<String, VertexFormatElement>builder()
+            .put("Position", new VertexFormatElement(0, VertexFormatElement.ComponentType.SHORT, VertexFormatElement.Type.POSITION, 4))
+            .put("Color", VertexFormats.COLOR_ELEMENT)
+            .put("UV0", new VertexFormatElement(0, VertexFormatElement.ComponentType.USHORT, VertexFormatElement.Type.UV, 2))
+            .put("UV2", new VertexFormatElement(2, VertexFormatElement.ComponentType.UBYTE, VertexFormatElement.Type.UV, 2))
+            .put("Normal", new VertexFormatElement(0, VertexFormatElement.ComponentType.BYTE, VertexFormatElement.Type.NORMAL, 2))
+            .build());
+
+    /**
+     * The names of the compact shader programs, in the order
+     * they are passed to {@link #setCompactProgram(int, net.minecraft.client.gl.ShaderProgram)}
+     */
+    public static final List<String> COMPACT_PROGRAMS = List.of("rendertype_compact_solid", "rendertype_compact_cutout_mipped", "rendertype_compact_cutout");
+
+    private static @Nullable net.minecraft.client.gl.ShaderProgram greedyProgram = null;
+    private static final net.minecraft.client.gl.ShaderProgram[] compactPrograms = new net.minecraft.client.gl.ShaderProgram[COMPACT_PROGRAMS.size()];
+
+    private static final RenderLayer GREEDY = of(
+            "worldmesher_greedy",
+            GREEDY_FORMAT,
+            VertexFormat.DrawMode.QUADS,
+            2097152,
+            MultiPhaseParameters.builder()
+                    // this is RenderPhase.ShaderProgram, not the GL program above
+                    .program(new ShaderProgram(WorldMesherRenderLayers::greedyProgram))
+                    .texture(MIPMAP_BLOCK_ATLAS_TEXTURE)
+                    .lightmap(ENABLE_LIGHTMAP)
+                    .build(true)
+    );
+
+    // the translucent layer stays in the standard format,
+    // since its quads are sorted by their float positions
+    private static final Map<RenderLayer, RenderLayer> COMPACT_LAYERS = Map.of(
+            RenderLayer.getSolid(), compact(0, "solid", MIPMAP_BLOCK_ATLAS_TEXTURE),
+            RenderLayer.getCutoutMipped(), compact(1, "cutout_mipped", MIPMAP_BLOCK_ATLAS_TEXTURE),
+            RenderLayer.getCutout(), compact(2, "cutout", BLOCK_ATLAS_TEXTURE)
+    );
+
+    private WorldMesherRenderLayers(String name, VertexFormat vertexFormat, VertexFormat.DrawMode drawMode, int expectedBufferSize, boolean hasCrumbling, boolean translucent, Runnable startAction, Runnable endAction) {
+        super(name, vertexFormat, drawMode, expectedBufferSize, hasCrumbling, translucent, startAction, endAction);
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * The solid layer merged faces are drawn in, see {@link #GREEDY_FORMAT}
+     */
+    public static RenderLayer greedy() {
+        return GREEDY;
+    }
+
+    /**
+     * @return The shader program of the greedy layer, or {@code null}
+     * if it is not loaded - in which case faces must not be merged
+     */
+    public static @Nullable net.minecraft.client.gl.ShaderProgram greedyProgram() {
+        return greedyProgram;
+    }
+
+    public static void setGreedyProgram(net.minecraft.client.gl.ShaderProgram program) {
+        greedyProgram = program;
+    }
+
+    /**
+     * @return The layer the given block layer is drawn in when its vertices are
+     * encoded compactly, or {@code null} if it cannot be
+     */
+    public static @Nullable RenderLayer compact(RenderLayer blockLayer) {
+        return COMPACT_LAYERS.get(blockLayer);
+    }
+
+    /**
+     * @return Whether the given layer is one of the compact block layers
+     */
+    public static boolean isCompact(RenderLayer layer) {
+        return layer.getVertexFormat() == COMPACT_FORMAT;
+    }
+
+    /**
+     * @return Whether all compact shader programs are loaded - if not,
+     * vertices must be kept in the standard format
+     */
+    public static boolean compactProgramsLoaded() {
+        for (var program : compactPrograms) {
+            if (program == null) return false;
+        }
+
+        return true;
+    }
+
+    public static void setCompactProgram(int index, net.minecraft.client.gl.ShaderProgram program) {
+        compactPrograms[index] = program;
+    }
+
+    private static RenderLayer compact(int program, String name, Texture texture) {
+        return of(
+                "worldmesher_compact_" + name,
+                COMPACT_FORMAT,
+                VertexFormat.DrawMode.QUADS,
+                2097152,
+                MultiPhaseParameters.builder()
+                        .program(new ShaderProgram(() -> compactPrograms[program]))
+                        .texture(texture)
+                        .lightmap(ENABLE_LIGHTMAP)
+                        .build(true)
+        );
+    }
+}
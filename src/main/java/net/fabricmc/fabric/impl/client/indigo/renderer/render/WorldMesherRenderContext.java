@@ -1,5 +1,7 @@
 package net.fabricmc.fabric.impl.client.indigo.renderer.render;
 
+import io.wispforest.worldmesher.LightCache;
+import net.fabricmc.fabric.impl.client.indigo.Indigo;
 import net.fabricmc.fabric.impl.client.indigo.renderer.aocalc.AoCalculator;
 import net.fabricmc.fabric.impl.client.indigo.renderer.aocalc.AoLuminanceFix;
 import net.minecraft.block.BlockState;
@@ -15,6 +17,7 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.math.random.Random;
 import net.minecraft.world.BlockRenderView;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.function.Function;
 
@@ -23,10 +26,16 @@ public class WorldMesherRenderContext extends AbstractBlockRenderContext {
 
     private final BlockRenderView blockView;
     private final Function<RenderLayer, VertexConsumer> bufferFunc;
+    private final @Nullable LightCache lightCache;
 
     public WorldMesherRenderContext(BlockRenderView blockView, Function<RenderLayer, VertexConsumer> bufferFunc) {
+        this(blockView, bufferFunc, null);
+    }
+
+    public WorldMesherRenderContext(BlockRenderView blockView, Function<RenderLayer, VertexConsumer> bufferFunc, @Nullable LightCache lightCache) {
         this.blockView = blockView;
         this.bufferFunc = bufferFunc;
+        this.lightCache = lightCache;
 
         this.blockInfo.prepareForWorld(blockView, true);
         this.blockInfo.random = Random.create();
@@ -58,11 +67,18 @@ public class WorldMesherRenderContext extends AbstractBlockRenderContext {
         return new AoCalculator(blockInfo) {
             @Override
             public int light(BlockPos pos, BlockState state) {
+                var lightCache = WorldMesherRenderContext.this.lightCache;
+                if (lightCache != null) return lightCache.light(state, pos);
+
                 return WorldRenderer.getLightmapCoordinates(WorldMesherRenderContext.this.blockView, state, pos);
             }
 
             @Override
             public float ao(BlockPos pos, BlockState state) {
+                // the cache holds vanilla's values, which the fix would change
+                var lightCache = WorldMesherRenderContext.this.lightCache;
+                if (lightCache != null && !Indigo.FIX_LUMINOUS_AO_SHADE) return lightCache.ao(state, pos);
+
                 return AoLuminanceFix.INSTANCE.apply(WorldMesherRenderContext.this.blockView, pos, state);
             }
         };
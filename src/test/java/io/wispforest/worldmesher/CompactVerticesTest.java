@@ -0,0 +1,208 @@
+package io.wispforest.worldmesher;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round-trips vertices through the compact format and checks that decoding
+ * restores every component of the standard format within the error bounds
+ * {@link CompactVertices} promises
+ */
+class CompactVerticesTest {
+
+    @Test
+    void sectionIndicesAboveFifteen() {
+        // these set the top bit of their five-bit field, for the z index that is bit 14 of the
+        // packed section short - which must survive being read back as a sign-extended short
+        for (int[] section : new int[][]{{16, 16, 16}, {31, 31, 31}, {17, 0, 31}, {0, 31, 16}}) {
+            var vertices = new ArrayList<Vertex>();
+            for (float local : new float[]{0, 0.5f, 8.25f, 15.999f, 16}) {
+                vertices.add(Vertex.at(section, 5, 9, 13, local, 16 - local, local / 2));
+            }
+
+            assertRoundTrip(vertices, 5, 9, 13, section);
+        }
+    }
+
+    @Test
+    void positionsOutsideTheirSection() {
+        // models may reach well past the block, and thereby the section, they belong to
+        int[] section = {3, 20, 0};
+
+        var vertices = new ArrayList<Vertex>();
+        for (float local : new float[]{-0.001f, -0.5f, -4.25f, -15.75f, 16.001f, 17.5f, 31.5f}) {
+            vertices.add(Vertex.at(section, 0, 15, 7, local, -local, local));
+        }
+
+        assertRoundTrip(vertices, 0, 15, 7, section);
+    }
+
+    @Test
+    void lowerHemisphereNormals() {
+        int[] section = {1, 2, 3};
+        byte[][] normals = {
+                {0, 0, -127},
+                {0, -127, 0},
+                {-127, 0, 0},
+                {90, 0, -90},
+                {-90, 0, -90},
+                {0, 90, -90},
+                {73, -73, -73},
+                {-73, 73, -73},
+                {-73, -73, -73},
+                {120, 10, -40},
+                {-10, -120, -40},
+                {5, 5, -126},
+                {-126, 3, -14}
+        };
+
+        var vertices = new ArrayList<Vertex>();
+        for (var normal : normals) {
+            vertices.add(Vertex.at(section, 4, 4, 4, 1, 2, 3).withNormal(normal[0], normal[1], normal[2]));
+        }
+
+        assertRoundTrip(vertices, 4, 4, 4, section);
+    }
+
+    @Test
+    void randomVertices() {
+        var random = new Random(0xC0FFEE);
+
+        for (int round = 0; round < 64; round++) {
+            int originX = random.nextInt(16), originY = random.nextInt(16), originZ = random.nextInt(16);
+            int[] section = {random.nextInt(CompactVertices.MAX_SECTIONS_PER_AXIS), random.nextInt(CompactVertices.MAX_SECTIONS_PER_AXIS), random.nextInt(CompactVertices.MAX_SECTIONS_PER_AXIS)};
+
+            var vertices = new ArrayList<Vertex>();
+            for (int vertex = 0; vertex < 64; vertex++) {
+                float normalX = (float) random.nextGaussian(), normalY = (float) random.nextGaussian(), normalZ = (float) random.nextGaussian();
+                float length = (float) Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+
+                vertices.add(new Vertex(
+                        section[0] * 16 - originX + random.nextFloat() * 24 - 4,
+                        section[1] * 16 - originY + random.nextFloat() * 24 - 4,
+                        section[2] * 16 - originZ + random.nextFloat() * 24 - 4,
+                        random.nextInt(),
+                        random.nextFloat(),
+                        random.nextFloat(),
+                        random.nextInt(16) << 4,
+                        random.nextInt(16) << 4,
+                        (byte) Math.round(normalX / length * 127),
+                        (byte) Math.round(normalY / length * 127),
+                        (byte) Math.round(normalZ / length * 127)
+                ));
+            }
+
+            assertRoundTrip(vertices, originX, originY, originZ, section);
+        }
+    }
+
+    private static void assertRoundTrip(List<Vertex> vertices, int originX, int originY, int originZ, int[] section) {
+        var standard = buffer(vertices.size() * CompactVertices.STANDARD_VERTEX_SIZE);
+        for (int index = 0; index < vertices.size(); index++) {
+            vertices.get(index).write(standard, index * CompactVertices.STANDARD_VERTEX_SIZE);
+        }
+
+        var compact = buffer(vertices.size() * CompactVertices.COMPACT_VERTEX_SIZE);
+        CompactVertices.encode(standard, compact, vertices.size(), originX, originY, originZ, section[0], section[1], section[2]);
+
+        var decoded = buffer(vertices.size() * CompactVertices.STANDARD_VERTEX_SIZE);
+        CompactVertices.decode(compact, decoded, vertices.size(), originX, originY, originZ);
+
+        for (int index = 0; index < vertices.size(); index++) {
+            var expected = vertices.get(index);
+            var actual = Vertex.read(decoded, index * CompactVertices.STANDARD_VERTEX_SIZE);
+            String vertex = expected + " decoded to " + actual;
+
+            assertWithin(expected.x, actual.x, CompactVertices.MAX_POSITION_ERROR, vertex);
+            assertWithin(expected.y, actual.y, CompactVertices.MAX_POSITION_ERROR, vertex);
+            assertWithin(expected.z, actual.z, CompactVertices.MAX_POSITION_ERROR, vertex);
+
+            assertEquals(expected.color, actual.color, vertex);
+
+            assertWithin(expected.u, actual.u, CompactVertices.MAX_UV_ERROR, vertex);
+            assertWithin(expected.v, actual.v, CompactVertices.MAX_UV_ERROR, vertex);
+
+            assertEquals(expected.blockLight, actual.blockLight, vertex);
+            assertEquals(expected.skyLight, actual.skyLight, vertex);
+
+            // the bytes of the source normal are only approximately unit length themselves
+            float length = (float) Math.sqrt(expected.normalX * expected.normalX + expected.normalY * expected.normalY + expected.normalZ * expected.normalZ);
+            assertWithin(expected.normalX / length, actual.normalX / 127f, CompactVertices.MAX_NORMAL_ERROR, vertex);
+            assertWithin(expected.normalY / length, actual.normalY / 127f, CompactVertices.MAX_NORMAL_ERROR, vertex);
+            assertWithin(expected.normalZ / length, actual.normalZ / 127f, CompactVertices.MAX_NORMAL_ERROR, vertex);
+        }
+    }
+
+    private static void assertWithin(float expected, float actual, float maxError, String message) {
+        assertTrue(Math.abs(expected - actual) <= maxError, () -> message + ": expected " + expected + " within " + maxError + ", got " + actual);
+    }
+
+    private static ByteBuffer buffer(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * One vertex of the standard format, with its position relative to the mesh origin
+     */
+    private record Vertex(float x, float y, float z, int color, float u, float v, int blockLight, int skyLight, byte normalX, byte normalY, byte normalZ) {
+
+        /**
+         * A vertex at the given position inside the given section, facing up
+         */
+        static Vertex at(int[] section, int originX, int originY, int originZ, float localX, float localY, float localZ) {
+            return new Vertex(
+                    section[0] * 16 - originX + localX,
+                    section[1] * 16 - originY + localY,
+                    section[2] * 16 - originZ + localZ,
+                    0xFF80C0FF,
+                    0.25f,
+                    0.75f,
+                    240,
+                    128,
+                    (byte) 0, (byte) 127, (byte) 0
+            );
+        }
+
+        Vertex withNormal(byte normalX, byte normalY, byte normalZ) {
+            return new Vertex(this.x, this.y, this.z, this.color, this.u, this.v, this.blockLight, this.skyLight, normalX, normalY, normalZ);
+        }
+
+        void write(ByteBuffer buffer, int offset) {
+            buffer.putFloat(offset, this.x);
+            buffer.putFloat(offset + 4, this.y);
+            buffer.putFloat(offset + 8, this.z);
+            buffer.putInt(offset + 12, this.color);
+            buffer.putFloat(offset + 16, this.u);
+            buffer.putFloat(offset + 20, this.v);
+            buffer.putShort(offset + 24, (short) this.blockLight);
+            buffer.putShort(offset + 26, (short) this.skyLight);
+            buffer.put(offset + 28, this.normalX);
+            buffer.put(offset + 29, this.normalY);
+            buffer.put(offset + 30, this.normalZ);
+        }
+
+        static Vertex read(ByteBuffer buffer, int offset) {
+            return new Vertex(
+                    buffer.getFloat(offset),
+                    buffer.getFloat(offset + 4),
+                    buffer.getFloat(offset + 8),
+                    buffer.getInt(offset + 12),
+                    buffer.getFloat(offset + 16),
+                    buffer.getFloat(offset + 20),
+                    Short.toUnsignedInt(buffer.getShort(offset + 24)),
+                    Short.toUnsignedInt(buffer.getShort(offset + 26)),
+                    buffer.get(offset + 28),
+                    buffer.get(offset + 29),
+                    buffer.get(offset + 30)
+            );
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.wispforest.worldmesher;
+
+import io.wispforest.worldmesher.renderers.WorldMesherBlockModelRenderer;
+import io.wispforest.worldmesher.renderers.WorldMesherRenderLayers;
+import net.minecraft.block.Blocks;
+import net.minecraft.client.color.block.BlockColors;
+import net.minecraft.client.render.BufferBuilder;
+import net.minecraft.client.render.OverlayTexture;
+import net.minecraft.client.render.VertexFormat;
+import net.minecraft.client.render.VertexFormats;
+import net.minecraft.client.util.math.MatrixStack;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.random.Random;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Feeds the greedy mesher through the block renderer like the tessellator does.
+ * The tessellator itself only merges faces once the greedy shader has loaded,
+ * which never happens outside the client
+ */
+class GreedyMesherTest {
+
+    private static final BlockPos ORIGIN = BlockPos.ORIGIN;
+    private static final BlockPos END = new BlockPos(15, 15, 15);
+
+    @BeforeAll
+    static void bootstrap() {
+        FixtureModels.bootstrap();
+    }
+
+    @Test
+    void alwaysDrawnEdgeFacesStayInTheirSection() {
+        var view = MeshFixture.SOLID_CUBE.create(16);
+        var models = FixtureModels.resources().models();
+        var section = MeshSection.collect(ORIGIN, END).get(0);
+
+        var renderer = new WorldMesherBlockModelRenderer(BlockColors.create());
+        for (var direction : Direction.values()) {
+            renderer.setCullDirection(direction, true);
+        }
+
+        var random = Random.create();
+        var matrices = new MatrixStack();
+        var consumer = new BufferBuilder(256);
+        consumer.begin(VertexFormat.DrawMode.QUADS, VertexFormats.POSITION_COLOR_TEXTURE_OVERLAY_LIGHT_NORMAL);
+
+        // edge faces are lit 500 blocks above the volume, which
+        // must not leak into where the mesher stores them
+        try (var mesher = new GreedyMesher(ORIGIN); var geometry = new SectionGeometry(section)) {
+            mesher.beginSection(section);
+            renderer.setFaceSink(mesher);
+
+            for (var pos : BlockPos.iterate(ORIGIN, END)) {
+                var state = view.getBlockState(pos);
+
+                matrices.push();
+                matrices.translate(pos.getX(), pos.getY(), pos.getZ());
+                renderer.renderModel(view, models.apply(state), state, pos, matrices, consumer, true, random, state.getRenderingSeed(pos), OverlayTexture.DEFAULT_UV, true);
+                matrices.pop();
+            }
+
+            mesher.flush(geometry);
+
+            // every side of the cube collapses into a single quad
+            var merged = geometry.layers().get(WorldMesherRenderLayers.greedy());
+            assertNotNull(merged, "No faces were merged");
+            assertEquals(6 * 4, merged.vertexCount());
+        } finally {
+            if (consumer.isBuilding()) consumer.end().release();
+        }
+    }
+
+    @Test
+    void facesOutsideTheSectionAreRejected() {
+        var state = Blocks.STONE.getDefaultState();
+        var quad = FixtureModels.resources().models().apply(state).getQuads(state, Direction.UP, Random.create()).get(0);
+
+        float[] brightness = {1f, 1f, 1f, 1f};
+        int[] light = {0xF000F0, 0xF000F0, 0xF000F0, 0xF000F0};
+
+        try (var mesher = new GreedyMesher(ORIGIN)) {
+            mesher.beginSection(MeshSection.collect(ORIGIN, END).get(0));
+
+            for (var pos : new BlockPos[]{new BlockPos(0, 515, 0), new BlockPos(16, 0, 0), new BlockPos(0, 0, -1), new BlockPos(15, 16, 15)}) {
+                assertFalse(mesher.accept(pos, quad, 1f, 1f, 1f, brightness, light), () -> "Accepted a face at " + pos.toShortString());
+            }
+
+            assertTrue(mesher.accept(new BlockPos(15, 15, 15), quad, 1f, 1f, 1f, brightness, light));
+            mesher.reset();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package io.wispforest.worldmesher;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMaps;
+import net.minecraft.util.math.BlockPos;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Guards the allocation-free tessellation hot path. Once warmed up, tessellating a
+ * fixture only allocates the geometry objects of every section, which is measured
+ * against the blocks the tessellator actually walked. Culled sections and blocks
+ * skipped by face visibility do not count, they never reach the per-block path
+ * <p>
+ * Mixins are not applied outside of a Fabric launch, so like in the benchmarks
+ * the tessellator is never closed
+ */
+class TessellationAllocationTest {
+
+    private static final int SIZE = 48;
+
+    private static final BlockPos ORIGIN = BlockPos.ORIGIN;
+    private static final BlockPos END = new BlockPos(SIZE - 1, SIZE - 1, SIZE - 1);
+
+    private static final int WARMUP_PASSES = 30;
+    private static final int MEASURED_PASSES = 5;
+
+    private static final double MAX_BYTES_PER_BLOCK = 16;
+
+    @BeforeAll
+    static void bootstrap() {
+        FixtureModels.bootstrap();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = MeshFixture.class, names = {"SOLID_CUBE", "HOLLOW_SHELL", "RANDOM_TERRAIN", "FLUID_HEAVY"})
+    void steadyStateTessellationAllocatesNothingPerBlock(MeshFixture fixture) {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "Thread allocation counters are not supported by this JVM");
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        var sections = MeshSection.collect(ORIGIN, END);
+        var snapshot = WorldSnapshot.capture(fixture.create(SIZE), sections);
+        var tessellator = new SectionTessellator(FixtureModels.resources(), new NativeBufferPool(0), Object2IntMaps.emptyMap(), snapshot, ORIGIN, END, true, false, false, false);
+
+        for (int pass = 0; pass < WARMUP_PASSES; pass++) {
+            tessellate(tessellator, sections);
+        }
+
+        // the quietest pass is the one least disturbed by the JIT and the test runner
+        long threadId = Thread.currentThread().getId();
+        long minAllocated = Long.MAX_VALUE;
+        long blocksVisited = 0;
+        for (int pass = 0; pass < MEASURED_PASSES; pass++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            blocksVisited = tessellate(tessellator, sections);
+            minAllocated = Math.min(minAllocated, threads.getThreadAllocatedBytes(threadId) - before);
+        }
+
+        assertTrue(blocksVisited > 0, () -> "Tessellating " + fixture + " visited no blocks");
+
+        double bytesPerBlock = minAllocated / (double) blocksVisited;
+        assertTrue(
+                bytesPerBlock <= MAX_BYTES_PER_BLOCK,
+                () -> String.format("Tessellating %s allocated %.2f bytes per visited block, at most %.0f are allowed", fixture, bytesPerBlock, MAX_BYTES_PER_BLOCK)
+        );
+    }
+
+    /**
+     * @return How many blocks the tessellator visited
+     */
+    private static long tessellate(SectionTessellator tessellator, List<MeshSection> sections) {
+        long blocksVisited = 0;
+        for (var section : sections) {
+            try (var geometry = tessellator.tessellate(section)) {
+                blocksVisited += geometry.blocksVisited;
+            }
+        }
+
+        return blocksVisited;
+    }
+}